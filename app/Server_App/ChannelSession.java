@@ -0,0 +1,184 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * state of one client connection served by an {@link EventLoop}: collects the
+ * received bytes until a line (or frame, see {@link FrameCodec}) is complete, passes
+ * it to the {@link RequestHandler} and queues the answers until the socket accepts them.
+ * While a report of the client waits to be written, the session doesn't handle
+ * further lines of that client, so the answers stay in order.
+ */
+public class ChannelSession implements RequestHandler.Responder {
+    /**
+     * longest line or frame a client may send (a key is 36 characters plus the password)
+     */
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final RequestHandler requestHandler;
+    private final EventLoop eventLoop;
+
+    /**
+     * true while the acknowledgement of a report is outstanding
+     */
+    private boolean awaiting;
+
+    /**
+     * true once the client switched to frames
+     */
+    private boolean frames;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    private final byte[] line = new byte[MAX_LINE_LENGTH];
+    private int lineLength;
+
+    /**
+     * answers that couldn't be written yet, because the client doesn't read fast enough
+     */
+    private final Deque<ByteBuffer> output = new ArrayDeque<>();
+
+    public ChannelSession(SocketChannel channel, SelectionKey key, RequestHandler requestHandler, EventLoop eventLoop) {
+        this.channel = channel;
+        this.key = key;
+        this.requestHandler = requestHandler;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * reads what the client sent and handles every completed line.
+     *
+     * @throws IOException if the client closed the connection or sent garbage
+     */
+    public void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            throw new EOFException("client closed the connection");
+        }
+        handleLines();
+        flush();
+    }
+
+    /**
+     * handles the complete lines (or frames) in the read buffer, unless waiting for an
+     * acknowledgement. What isn't handled stays in the buffer.
+     */
+    private void handleLines() throws IOException {
+        readBuffer.flip();
+        while (!awaiting && readBuffer.hasRemaining()) {
+            if (frames) {
+                if (!handleFrame()) {
+                    break;
+                }
+                continue;
+            }
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lineLength = 0;
+                requestHandler.handle(new String(line, 0, length), this);
+            } else if (lineLength == MAX_LINE_LENGTH) {
+                throw new IOException("line too long");
+            } else {
+                line[lineLength++] = b;
+            }
+        }
+        readBuffer.compact();
+    }
+
+    /**
+     * handles the frame at the position of the read buffer, if it is complete.
+     *
+     * @return false if the frame isn't complete yet
+     */
+    private boolean handleFrame() throws IOException {
+        if (readBuffer.remaining() < FrameCodec.HEADER_SIZE) {
+            return false;
+        }
+        int start = readBuffer.position();
+        byte type = readBuffer.get(start);
+        int length = readBuffer.getInt(start + 1);
+        if (length < 0 || length > MAX_LINE_LENGTH) {
+            throw new IOException("frame too long");
+        }
+        if (readBuffer.remaining() < FrameCodec.HEADER_SIZE + length) {
+            return false;
+        }
+        ByteBuffer payload = readBuffer.duplicate();
+        payload.position(start + FrameCodec.HEADER_SIZE).limit(start + FrameCodec.HEADER_SIZE + length);
+        readBuffer.position(start + FrameCodec.HEADER_SIZE + length);
+        requestHandler.handleFrame(type, payload, this);
+        return true;
+    }
+
+    @Override
+    public void send(String msg) {
+        output.add(ByteBuffer.wrap(msg.getBytes()));
+    }
+
+    @Override
+    public void send(ByteBuffer data) {
+        output.add(data);
+    }
+
+    @Override
+    public void useFrames() {
+        frames = true;
+    }
+
+    @Override
+    public void acknowledge(CompletableFuture<Void> durable, ByteBuffer ok, ByteBuffer failed) {
+        awaiting = true;
+        // the future is completed by the journal thread, the answer has to be sent from the event loop
+        durable.whenComplete((result, error) -> eventLoop.execute(() -> {
+            if (!key.isValid()) {
+                // the connection was dropped in the meantime
+                return;
+            }
+            send(error == null ? ok : failed);
+            awaiting = false;
+            try {
+                handleLines();
+                flush();
+            } catch (IOException e) {
+                key.cancel();
+                eventLoop.close(channel);
+            }
+        }));
+    }
+
+    /**
+     * writes as much of the queued answers as the socket accepts. While something is
+     * left, the session waits for the socket to become writable and stops reading
+     * new requests from that client.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[Math.min(output.size(), 64)];
+        while (!output.isEmpty()) {
+            // gathering write of the next few answers at once
+            int count = 0;
+            for (ByteBuffer buffer : output) {
+                if (count == buffers.length) {
+                    break;
+                }
+                buffers[count++] = buffer;
+            }
+            channel.write(buffers, 0, count);
+            while (!output.isEmpty() && !output.peek().hasRemaining()) {
+                output.poll();
+            }
+            if (!output.isEmpty() && output.peek().hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(awaiting ? 0 : SelectionKey.OP_READ);
+    }
+}
@@ -2,9 +2,16 @@
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-public class Connection extends Thread {
-    private PrintWriter writer;
+/**
+ * serves one client with blocking reads and writes. Runs on whatever thread
+ * the {@link Server}s executor provides (see {@link ConnectionExecutors}).
+ */
+public class Connection implements Runnable, RequestHandler.Responder {
     /**
      * the client socket, that represents the connection to a single client
      */
@@ -18,6 +25,16 @@ public class Connection extends Thread {
      */
     private OutputStream outputStream;
 
+    /**
+     * true once the client switched to frames, see {@link FrameCodec}
+     */
+    private boolean frames;
+
+    /**
+     * longest line or frame a client may send (a key is 36 characters plus the password)
+     */
+    private static final int MAX_REQUEST_LENGTH = 1024;
+
     /**
      * instance gets copy of reference to server itself and the socket, representing the connection of a client to the server.
      *
@@ -45,44 +62,91 @@ public class Connection extends Thread {
      * @throws IOException handled in the run method of the thread
      */
     private void connectClient() throws IOException {
-        // establishes the input(stream) from the client to the server
-        InputStream inputStream = socket.getInputStream();
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        // establishes the input(stream) from the client to the server. Read as bytes, since
+        // a client may switch from lines to frames
+        DataInputStream inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
 
         outputStream = socket.getOutputStream();
 
         // contains messages from node
         String line;
 
-        PrintWriter writer = null;
-        try {
-            writer = new PrintWriter(new FileWriter("infectedlist.txt",true));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
         // reads a line from the client node, distinguishing between request and ID transmission
-        while ((line = reader.readLine()) != null) {
-            if(line.equals("requestlist")) {
-                for(int i = 0; i < ServerEntry.infectedList.size(); i++) {
-                    send(ServerEntry.infectedList.get(i) + "\n");
-                }
-                //############################################################################
-                send("done\n");             // changed!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
-                //############################################################################
-            } else {
-                System.out.println(line);
-                if(line.substring(0, 3).equals("123")) {
-                    line = line.substring(3);
-                    ServerEntry.infectedList.add(line);
-                    writer.println(line);
-                }
-                writer.close();
+        while (!frames && (line = readLine(inputStream)) != null) {
+            server.getRequestHandler().handle(line, this);
+        }
+
+        byte[] payload = new byte[MAX_REQUEST_LENGTH];
+        while (frames) {
+            byte type;
+            try {
+                type = inputStream.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            int length = inputStream.readInt();
+            if (length < 0 || length > MAX_REQUEST_LENGTH) {
+                throw new IOException("frame too long");
+            }
+            inputStream.readFully(payload, 0, length);
+            server.getRequestHandler().handleFrame(type, ByteBuffer.wrap(payload, 0, length), this);
+        }
+    }
+
+    /**
+     * reads a line terminated by "\n" or "\r\n".
+     *
+     * @return the line without its line break, null if the client closed the connection
+     */
+    private static String readLine(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = inputStream.read()) != '\n') {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString();
             }
+            if (line.size() == MAX_REQUEST_LENGTH) {
+                throw new IOException("line too long");
+            }
+            line.write(b);
         }
+        String text = line.toString();
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
     }
 
-    private void send(String msg) throws IOException {
+    @Override
+    public void send(String msg) throws IOException {
         outputStream.write(msg.getBytes());
     }
+
+    @Override
+    public void send(ByteBuffer data) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel != null) {
+            // writes a direct buffer straight to the socket
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            outputStream.write(bytes);
+        }
+    }
+
+    @Override
+    public void acknowledge(CompletableFuture<Void> durable, ByteBuffer ok, ByteBuffer failed) throws IOException {
+        // this thread serves only this client, so it can simply wait
+        try {
+            durable.join();
+            send(ok);
+        } catch (CompletionException e) {
+            send(failed);
+        }
+    }
+
+    @Override
+    public void useFrames() {
+        frames = true;
+    }
 }
@@ -0,0 +1,46 @@
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * the different kinds of threads the {@link Server} can run its connections on:
+ * a new platform thread per connection or a fixed pool of platform threads.
+ * For many thousands of mostly idle clients use the {@link SelectorServer}
+ * ("nio") instead, it doesn't need a thread per connection at all.
+ */
+public class ConnectionExecutors {
+
+    private ConnectionExecutors() {
+    }
+
+    /**
+     * picks the executor by the name given on the command line.
+     *
+     * @param mode "platform" or "pool"
+     * @param poolSize number of threads, only used for "pool"
+     * @return the executor
+     */
+    public static Executor forMode(String mode, int poolSize) {
+        switch (mode) {
+            case "platform":
+                return platformThreads();
+            case "pool":
+                return fixedPool(poolSize);
+            default:
+                throw new IllegalArgumentException("unknown connection mode: " + mode);
+        }
+    }
+
+    /**
+     * one new platform thread per connection, like the server always did.
+     */
+    public static Executor platformThreads() {
+        return runnable -> new Thread(runnable).start();
+    }
+
+    /**
+     * a fixed number of platform threads, further connections wait until a thread is free.
+     */
+    public static Executor fixedPool(int poolSize) {
+        return Executors.newFixedThreadPool(poolSize);
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * one of the threads of the {@link SelectorServer}. Waits on a Selector for any
+ * of its connections to become readable (or writable again, if a client doesn't
+ * read fast enough) and lets the corresponding {@link ChannelSession} do the work.
+ * Everything concerning these connections happens in this thread; other threads pass
+ * their work in with {@link #execute(Runnable)}.
+ */
+public class EventLoop extends Thread {
+    private final Selector selector;
+    private final RequestHandler requestHandler;
+
+    /**
+     * connections accepted by the server, but not yet registered with the selector.
+     * Registering has to happen in this thread, otherwise it blocks while the selector waits.
+     */
+    private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * work passed in by other threads, for example answers that had to wait for the journal
+     */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    public EventLoop(RequestHandler requestHandler, int index) throws IOException {
+        super("event-loop-" + index);
+        this.requestHandler = requestHandler;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * hands a newly accepted, non-blocking connection to this event loop.
+     *
+     * @param channel the connection to a client
+     */
+    public void register(SocketChannel channel) {
+        pending.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * runs a task in this event loop.
+     *
+     * @param task work on one of the connections of this event loop
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new ChannelSession(channel, key, requestHandler, this));
+                } catch (IOException e) {
+                    close(channel);
+                }
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                ChannelSession session = (ChannelSession) key.attachment();
+                try {
+                    if (key.isValid() && key.isWritable()) {
+                        session.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        session.read();
+                    }
+                } catch (IOException e) {
+                    // the client is gone or misbehaved, just drop the connection
+                    key.cancel();
+                    close((SocketChannel) key.channel());
+                }
+            }
+        }
+    }
+
+    /**
+     * closes a connection of this event loop.
+     */
+    public void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
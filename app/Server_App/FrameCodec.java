@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * encoding of version 2 of the protocol (see {@link RequestHandler}). After a client sent
+ * the line "version 2" and the server answered it with the same line, both sides only
+ * exchange frames: a type byte, the length of the payload as int and the payload, all
+ * big endian. Keys travel as the 16 bytes of their UUID instead of 37 characters.
+ *
+ * LIST (client): cursor (long), 0 for all keys, optionally followed by the {@link KeyEncoding}
+ * the client would like to get (byte). Answered with KEYS.
+ * REPORT (client): key (16 bytes), followed by the password in UTF-8. Answered with ACK.
+ * KEYS (server): reset flag (byte), encoding of the keys (byte), cursor (long), number of
+ * keys (int), the encoded keys.
+ * ACK (server): 0 if the report is stored, 1 if not.
+ * FILTER_REQUEST (client): cursor (long), 0 for all keys, and the false positive rate
+ * (double). Answered with FILTER at the largest of {@link #FALSE_POSITIVE_RATES} that isn't
+ * above the requested rate, or at the smallest of them.
+ * FILTER (server): cursor (long), number of keys (int), number of hash functions (byte),
+ * number of bits (int), the bits as longs. A {@link KeyFilter} over the keys after the
+ * cursor, or over all keys if the server doesn't know it.
+ */
+public class FrameCodec {
+    public static final String VERSION_LINE = "version 2";
+
+    public static final byte LIST = 1;
+    public static final byte REPORT = 2;
+    public static final byte KEYS = 3;
+    public static final byte ACK = 4;
+    public static final byte FILTER_REQUEST = 5;
+    public static final byte FILTER = 6;
+
+    /**
+     * type and length in front of every payload
+     */
+    public static final int HEADER_SIZE = 5;
+    public static final int KEY_SIZE = 16;
+
+    /**
+     * the false positive rates filters are built with, from the largest to the smallest.
+     * Only a few, so the filter over all keys can be kept for each of them.
+     */
+    public static final double[] FALSE_POSITIVE_RATES = {0.01, 0.001, 0.0001};
+
+    /**
+     * reset flag, encoding, cursor and number of keys in front of the keys of a KEYS frame
+     */
+    private static final int KEYS_HEADER_SIZE = 14;
+
+    /**
+     * cursor, number of keys, number of hash functions and number of bits in front of the bits of a FILTER frame
+     */
+    private static final int FILTER_HEADER_SIZE = 17;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * encodes a KEYS frame.
+     *
+     * @param reset true if the client has to drop the keys it has
+     * @param keys the keys, all of them UUIDs, and the cursor sent along (its last sequence number)
+     * @param encoding how the keys are encoded
+     * @return the frame, ready to be sent
+     */
+    public static ByteBuffer keys(boolean reset, InfectedKeyStore.Snapshot keys, KeyEncoding encoding) {
+        if (keys.size() * KEY_SIZE > Integer.MAX_VALUE - HEADER_SIZE - KEYS_HEADER_SIZE) {
+            throw new IllegalArgumentException(keys.size() + " keys don't fit into one frame");
+        }
+        byte[] data = encoding.encode(keys, (int) keys.size());
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + KEYS_HEADER_SIZE + data.length);
+        frame.put(KEYS).putInt(KEYS_HEADER_SIZE + data.length);
+        frame.put((byte) (reset ? 1 : 0)).put(encoding.id()).putLong(keys.lastSequence()).putInt((int) keys.size());
+        frame.put(data);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * encodes a FILTER frame.
+     *
+     * @param keys the keys the filter was built for, and the cursor sent along (its last sequence number)
+     * @param filter the filter
+     * @return the frame, ready to be sent
+     */
+    public static ByteBuffer filter(InfectedKeyStore.Snapshot keys, KeyFilter filter) {
+        int length = FILTER_HEADER_SIZE + filter.bits() / 8;
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+        frame.put(FILTER).putInt(length);
+        frame.putLong(keys.lastSequence()).putInt((int) keys.size()).put((byte) filter.hashes()).putInt(filter.bits());
+        filter.writeTo(frame);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @param cursor sequence number of the last key the client has, 0 for all keys
+     * @param falsePositiveRate the false positive rate the client would like the filter to have
+     * @return a FILTER_REQUEST frame, ready to be sent
+     */
+    public static ByteBuffer filterRequest(long cursor, double falsePositiveRate) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 16);
+        frame.put(FILTER_REQUEST).putInt(16).putLong(cursor).putDouble(falsePositiveRate);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * reads the cursor of a FILTER_REQUEST payload.
+     */
+    public static long getFilterCursor(ByteBuffer payload) throws IOException {
+        if (payload.remaining() != 16) {
+            throw new IOException("malformed FILTER_REQUEST frame");
+        }
+        return payload.getLong();
+    }
+
+    /**
+     * reads the false positive rate following the cursor of a FILTER_REQUEST payload.
+     *
+     * @return the largest of FALSE_POSITIVE_RATES that isn't above the requested rate, or the
+     * smallest of them if all are
+     */
+    public static double getFalsePositiveRate(ByteBuffer payload) throws IOException {
+        double rate = payload.getDouble();
+        if (!(rate > 0 && rate < 1)) {
+            throw new IOException("false positive rate " + rate);
+        }
+        for (double allowed : FALSE_POSITIVE_RATES) {
+            if (allowed <= rate) {
+                return allowed;
+            }
+        }
+        return FALSE_POSITIVE_RATES[FALSE_POSITIVE_RATES.length - 1];
+    }
+
+    /**
+     * @param ok true if the report was stored
+     * @return an ACK frame, ready to be sent
+     */
+    public static ByteBuffer ack(boolean ok) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 1);
+        frame.put(ACK).putInt(1).put((byte) (ok ? 0 : 1));
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @param cursor sequence number of the last key the client has, 0 for all keys
+     * @param encoding how the client would like to get the keys
+     * @return a LIST frame, ready to be sent
+     */
+    public static ByteBuffer list(long cursor, KeyEncoding encoding) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + 9);
+        frame.put(LIST).putInt(9).putLong(cursor).put(encoding.id());
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * @param key the reported key, a UUID
+     * @param password the password given to the infected user
+     * @return a REPORT frame, ready to be sent
+     */
+    public static ByteBuffer report(String key, String password) {
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + KEY_SIZE + passwordBytes.length);
+        frame.put(REPORT).putInt(KEY_SIZE + passwordBytes.length);
+        putKey(frame, key);
+        frame.put(passwordBytes);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * reads the cursor of a LIST payload.
+     */
+    public static long getCursor(ByteBuffer payload) throws IOException {
+        if (payload.remaining() != 8 && payload.remaining() != 9) {
+            throw new IOException("malformed LIST frame");
+        }
+        return payload.getLong();
+    }
+
+    /**
+     * reads the encoding following the cursor of a LIST payload.
+     *
+     * @return the encoding the client asked for, RAW if it didn't ask
+     */
+    public static KeyEncoding getEncoding(ByteBuffer payload) {
+        return payload.hasRemaining() ? KeyEncoding.forId(payload.get()) : KeyEncoding.RAW;
+    }
+
+    /**
+     * reads the key at the start of a REPORT payload.
+     */
+    public static String getReportedKey(ByteBuffer payload) throws IOException {
+        if (payload.remaining() < KEY_SIZE) {
+            throw new IOException("malformed REPORT frame");
+        }
+        return getKey(payload);
+    }
+
+    /**
+     * reads the password following the key of a REPORT payload.
+     */
+    public static String getPassword(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void putKey(ByteBuffer target, String key) {
+        UUID uuid = UUID.fromString(key);
+        target.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+
+    public static String getKey(ByteBuffer source) {
+        return new UUID(source.getLong(), source.getLong()).toString();
+    }
+}
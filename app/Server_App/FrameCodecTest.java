@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * round trip test for the {@link FrameCodec}: encodes every kind of frame (KEYS in every
+ * {@link KeyEncoding}), decodes it again the way the server and the app read them and
+ * compares the result. Also prints how many bytes a list of keys takes as frame and as lines,
+ * and as {@link KeyFilter} with a few false positive rates. Usage:
+ *
+ * java FrameCodecTest [keys]
+ *
+ * Exits with status 1 if a check fails.
+ */
+public class FrameCodecTest {
+
+    public static void main(String[] args) throws IOException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        ByteBuffer list = FrameCodec.list(42, KeyEncoding.SORTED);
+        checkHeader(list, FrameCodec.LIST, 9);
+        check(FrameCodec.getCursor(list) == 42, "cursor of LIST frame");
+        check(FrameCodec.getEncoding(list) == KeyEncoding.SORTED, "encoding of LIST frame");
+
+        String reported = UUID.randomUUID().toString();
+        ByteBuffer report = FrameCodec.report(reported, "123");
+        checkHeader(report, FrameCodec.REPORT, FrameCodec.KEY_SIZE + 3);
+        check(FrameCodec.getReportedKey(report).equals(reported), "key of REPORT frame");
+        check(FrameCodec.getPassword(report).equals("123"), "password of REPORT frame");
+
+        ByteBuffer ack = FrameCodec.ack(false);
+        checkHeader(ack, FrameCodec.ACK, 1);
+        check(ack.get() == 1, "failed ACK frame");
+
+        InfectedKeyStore store = new InfectedKeyStore();
+        ArrayList<String> expected = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            String key = UUID.randomUUID().toString();
+            store.add(key);
+            expected.add(key);
+        }
+        long lines = 0;
+        for (String key : store.snapshot()) {
+            lines += key.length() + 1;
+        }
+        lines += "done\n".length();
+        System.out.println(keys + " keys: " + lines + " bytes as lines");
+
+        for (KeyEncoding encoding : KeyEncoding.values()) {
+            InfectedKeyStore.Snapshot snapshot = store.snapshotSince(keys / 2);
+            ByteBuffer frame = FrameCodec.keys(false, snapshot, encoding);
+            int size = frame.remaining();
+            checkHeader(frame, FrameCodec.KEYS, size - FrameCodec.HEADER_SIZE);
+            check(frame.get() == 0, "reset flag of KEYS frame");
+            check(frame.get() == encoding.id(), "encoding of KEYS frame");
+            check(frame.getLong() == keys, "cursor of KEYS frame");
+            int count = frame.getInt();
+            check(count == keys - keys / 2, "number of keys in KEYS frame");
+            byte[] data = new byte[frame.remaining()];
+            frame.get(data);
+            List<String> decoded = encoding.decode(data, count);
+            if (encoding == KeyEncoding.SORTED) {
+                // the order of the keys is lost
+                check(new HashSet<>(decoded).equals(new HashSet<>(expected.subList(keys / 2, keys))), "keys of " + encoding);
+            } else {
+                check(decoded.equals(expected.subList(keys / 2, keys)), "keys of " + encoding);
+            }
+            System.out.println(count + " keys: " + size + " bytes as " + encoding + " frame");
+        }
+
+        for (double rate : new double[]{0.1, 0.01, 0.001}) {
+            InfectedKeyStore.Snapshot snapshot = store.snapshot();
+            KeyFilter filter = new KeyFilter(snapshot, rate);
+            ByteBuffer frame = FrameCodec.filter(snapshot, filter);
+            int size = frame.remaining();
+            checkHeader(frame, FrameCodec.FILTER, size - FrameCodec.HEADER_SIZE);
+            check(frame.getLong() == keys, "cursor of FILTER frame");
+            check(frame.getInt() == keys, "number of keys in FILTER frame");
+            check(frame.get() == filter.hashes(), "hash functions of FILTER frame");
+            check(frame.getInt() == filter.bits() && frame.remaining() == filter.bits() / 8, "bits of FILTER frame");
+            for (String key : expected) {
+                check(filter.mightContain(key), "filter contains every key");
+            }
+            int falsePositives = 0;
+            int tries = 100000;
+            for (int i = 0; i < tries; i++) {
+                if (filter.mightContain(UUID.randomUUID().toString())) {
+                    falsePositives++;
+                }
+            }
+            check(falsePositives < tries * rate * 2 + 20, "false positive rate of filter at " + rate);
+            System.out.println(keys + " keys: " + size + " bytes as FILTER frame at " + rate + ", "
+                    + falsePositives * 100.0 / tries + " % false positives");
+        }
+
+        ByteBuffer filterRequest = FrameCodec.filterRequest(7, 0.01);
+        checkHeader(filterRequest, FrameCodec.FILTER_REQUEST, 16);
+        check(FrameCodec.getFilterCursor(filterRequest) == 7, "cursor of FILTER_REQUEST frame");
+        check(FrameCodec.getFalsePositiveRate(filterRequest) == 0.01, "false positive rate of FILTER_REQUEST frame");
+        for (double[] clamped : new double[][]{{0.5, 0.01}, {0.005, 0.001}, {0.0001, 0.0001}, {1e-9, 0.0001}}) {
+            ByteBuffer request = FrameCodec.filterRequest(0, clamped[0]);
+            request.position(FrameCodec.HEADER_SIZE);
+            FrameCodec.getFilterCursor(request);
+            check(FrameCodec.getFalsePositiveRate(request) == clamped[1], "false positive rate " + clamped[0] + " clamped");
+        }
+
+        ListResponseCache filterCache = new ListResponseCache(store,
+                snapshot -> FrameCodec.filter(snapshot, new KeyFilter(snapshot, 0.001)));
+        ByteBuffer cachedFilter = filterCache.fullResponse();
+        check(cachedFilter.equals(FrameCodec.filter(store.snapshot(), new KeyFilter(store.snapshot(), 0.001))), "cached FILTER frame");
+        check(filterCache.fullResponse().equals(cachedFilter), "FILTER frame kept while no key is added");
+        store.add(UUID.randomUUID().toString());
+        ByteBuffer rebuiltFilter = filterCache.fullResponse();
+        rebuiltFilter.position(FrameCodec.HEADER_SIZE);
+        check(rebuiltFilter.getLong() == store.size(), "FILTER frame rebuilt after a key was added");
+
+        // edge cases of the sorted encoding: no key, one key, smallest and biggest key
+        for (String[] edge : new String[][]{{}, {expected.get(0)},
+                {"00000000-0000-0000-0000-000000000000", "ffffffff-ffff-ffff-ffff-ffffffffffff", "80000000-0000-0000-8000-000000000000"}}) {
+            ArrayList<String> edgeKeys = new ArrayList<>();
+            for (String key : edge) {
+                edgeKeys.add(key);
+            }
+            byte[] data = KeyEncoding.SORTED.encode(edgeKeys, edgeKeys.size());
+            check(new HashSet<>(KeyEncoding.SORTED.decode(data, edgeKeys.size())).equals(new HashSet<>(edgeKeys)),
+                    "sorted encoding of " + edgeKeys);
+        }
+        System.out.println("OK");
+    }
+
+    private static void checkHeader(ByteBuffer frame, byte type, int length) {
+        check(frame.get() == type, "type of frame " + type);
+        check(frame.getInt() == length, "length of frame " + type);
+        check(frame.remaining() >= length, "payload of frame " + type);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("FAILED: " + what);
+            System.exit(1);
+        }
+    }
+}
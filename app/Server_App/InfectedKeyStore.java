@@ -0,0 +1,322 @@
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * holds the keys of infected users. Connections add reported keys while others
+ * download the list at the same time, so neither side takes a lock: keys are
+ * appended to a singly linked list with compare-and-set, and a download iterates
+ * a snapshot, which covers exactly the keys that were added when it was taken.
+ * Every key gets a sequence number (starting at 1) in the order it was added.
+ * A key that is already in the store is not added a second time. A key is only
+ * reported by contains() once it is linked into the list, so every snapshot
+ * taken after contains() returned true has it.
+ *
+ * The keys of a {@link KeySnapshot} the store is started with stay where they are,
+ * in the mapped file: they are the first keys of the store, looked up through a table
+ * of their positions, and only turned into strings while a snapshot is iterated.
+ * Only the keys reported after startup are kept as strings in the list.
+ */
+public class InfectedKeyStore {
+    /**
+     * every this many keys, the node is remembered, so a client that already has the keys up
+     * to a certain sequence number can be served without walking the list from the start
+     */
+    private static final int CHECKPOINT_INTERVAL = 1024;
+
+    /**
+     * one key in the list, linked to the key added after it
+     */
+    private static final class Node {
+        private static final AtomicReferenceFieldUpdater<Node, Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        final String key;
+        final long sequence;
+        volatile Node next;
+
+        Node(String key, long sequence) {
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final int KEY_SIZE = 16;
+
+    /**
+     * the keys of the snapshot the store was started with, 16 bytes each, in the order of
+     * their sequence numbers (1 to baseCount)
+     */
+    private final ByteBuffer base;
+    private final int baseCount;
+
+    /**
+     * open addressing table of the base keys: index in base plus one, 0 for a free slot
+     */
+    private final int[] baseTable;
+
+    /**
+     * placeholder in front of the first key that isn't in base, so appending never has to
+     * handle an empty list. Its sequence number is the one of the last key in base.
+     */
+    private final Node head;
+
+    /**
+     * the last node or, while another thread is appending, the one before it
+     */
+    private final AtomicReference<Node> tail;
+
+    /**
+     * all keys added after the base keys, to recognize duplicates. A key maps to false
+     * while it is being appended and to true once it is in the list.
+     */
+    private final ConcurrentHashMap<String, Boolean> keys;
+
+    /**
+     * nodes with a sequence number divisible by CHECKPOINT_INTERVAL
+     */
+    private final ConcurrentHashMap<Long, Node> checkpoints = new ConcurrentHashMap<>();
+
+    public InfectedKeyStore() {
+        this(ByteBuffer.allocate(0), 16);
+    }
+
+    /**
+     * starts with the keys of a snapshot, without copying them.
+     *
+     * @param base the keys, 16 bytes each (see {@link KeySnapshot#keys()}), never changed afterwards
+     * @param expectedKeys number of keys that are going to be added soon. Saves growing the
+     *                     set of added keys step by step.
+     */
+    public InfectedKeyStore(ByteBuffer base, int expectedKeys) {
+        this.base = base;
+        baseCount = base.capacity() / KEY_SIZE;
+        baseTable = new int[tableSize(baseCount)];
+        for (int i = 0; i < baseCount; i++) {
+            int slot = hash(base.getLong(i * KEY_SIZE), base.getLong(i * KEY_SIZE + 8)) & (baseTable.length - 1);
+            while (baseTable[slot] != 0) {
+                slot = (slot + 1) & (baseTable.length - 1);
+            }
+            baseTable[slot] = i + 1;
+        }
+        head = new Node(null, baseCount);
+        tail = new AtomicReference<>(head);
+        keys = new ConcurrentHashMap<>(expectedKeys);
+    }
+
+    /**
+     * a power of two that keeps the table at most half full
+     */
+    private static int tableSize(int count) {
+        int size = 1;
+        while (size < count * 2L) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int hash(long high, long low) {
+        long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return true if the key is one of the base keys
+     */
+    private boolean inBase(String key) {
+        if (baseCount == 0 || !KeySnapshot.isValidKey(key)) {
+            return false;
+        }
+        UUID uuid = UUID.fromString(key);
+        long high = uuid.getMostSignificantBits();
+        long low = uuid.getLeastSignificantBits();
+        int slot = hash(high, low) & (baseTable.length - 1);
+        int index;
+        while ((index = baseTable[slot]) != 0) {
+            int offset = (index - 1) * KEY_SIZE;
+            if (base.getLong(offset) == high && base.getLong(offset + 8) == low) {
+                return true;
+            }
+            slot = (slot + 1) & (baseTable.length - 1);
+        }
+        return false;
+    }
+
+    /**
+     * @param index position of a key in base, its sequence number minus one
+     */
+    private String baseKey(long index) {
+        int offset = (int) index * KEY_SIZE;
+        return new UUID(base.getLong(offset), base.getLong(offset + 8)).toString();
+    }
+
+    /**
+     * adds a key, if it isn't in the store yet.
+     *
+     * @param key the key of an infected user
+     * @return true if the key was added, false if it was already there
+     */
+    public boolean add(String key) {
+        if (inBase(key)) {
+            return false;
+        }
+        // claims the key, so a thread adding it at the same time doesn't link it twice
+        if (keys.putIfAbsent(key, Boolean.FALSE) != null) {
+            return false;
+        }
+        while (true) {
+            Node last = tail.get();
+            Node next = last.next;
+            if (next != null) {
+                // another thread appended, but hasn't moved the tail yet: help it
+                tail.compareAndSet(last, next);
+                continue;
+            }
+            Node node = new Node(key, last.sequence + 1);
+            if (Node.NEXT.compareAndSet(last, null, node)) {
+                tail.compareAndSet(last, node);
+                if (node.sequence % CHECKPOINT_INTERVAL == 0) {
+                    checkpoints.put(node.sequence, node);
+                }
+                // only now it is visible to contains(), snapshots from here on have it
+                keys.put(key, Boolean.TRUE);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param key a key
+     * @return true if the key is in the store and in every snapshot taken from now on.
+     * False for a key another thread is still appending.
+     */
+    public boolean contains(String key) {
+        return keys.get(key) == Boolean.TRUE || inBase(key);
+    }
+
+    /**
+     * @return the number of keys added so far, which is also the sequence number of the last key
+     */
+    public long size() {
+        return last().sequence;
+    }
+
+    /**
+     * takes a snapshot of the store. Keys added afterwards don't show up when iterating it.
+     *
+     * @return the keys currently in the store, in the order they were added
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(0, head, last());
+    }
+
+    /**
+     * takes a snapshot of the keys that were added after a given one.
+     *
+     * @param sequence sequence number of the last key a client already has
+     * @return the keys added after it up to now, or null if there is no key with that
+     * sequence number (yet)
+     */
+    public Snapshot snapshotSince(long sequence) {
+        Node last = last();
+        if (sequence < 0 || sequence > last.sequence) {
+            return null;
+        }
+        if (sequence <= baseCount) {
+            return new Snapshot(sequence, head, last);
+        }
+        // start at the closest checkpoint before the sequence number. A checkpoint might not
+        // be put yet by the thread that appended it, then take the one before.
+        Node node = head;
+        for (long checkpoint = sequence - sequence % CHECKPOINT_INTERVAL; checkpoint > baseCount; checkpoint -= CHECKPOINT_INTERVAL) {
+            Node candidate = checkpoints.get(checkpoint);
+            if (candidate != null) {
+                node = candidate;
+                break;
+            }
+        }
+        while (node.sequence < sequence) {
+            node = node.next;
+        }
+        return new Snapshot(sequence, node, last);
+    }
+
+    /**
+     * the node that was appended last. The tail may lag behind by a node for a short
+     * moment while another thread is appending, so follow the links from there.
+     */
+    private Node last() {
+        Node last = tail.get();
+        Node next;
+        while ((next = last.next) != null) {
+            last = next;
+        }
+        return last;
+    }
+
+    /**
+     * a consistent view of the keys up to a certain point. Can be iterated any number
+     * of times without being affected by keys that are added in the meantime.
+     */
+    public final class Snapshot implements Iterable<String> {
+        private final long after;
+        private final Node before;
+        private final Node last;
+
+        /**
+         * @param after sequence number of the key before the first one in the snapshot
+         * @param before the node to follow once the base keys are iterated, the one with
+         *               the sequence number after or head if that is a base key
+         * @param last the last node in the snapshot
+         */
+        private Snapshot(long after, Node before, Node last) {
+            this.after = after;
+            this.before = before;
+            this.last = last;
+        }
+
+        /**
+         * @return the number of keys in the snapshot
+         */
+        public long size() {
+            return last.sequence - after;
+        }
+
+        /**
+         * @return the sequence number of the last key in the snapshot
+         */
+        public long lastSequence() {
+            return last.sequence;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private long sequence = after;
+                private Node current = before;
+
+                @Override
+                public boolean hasNext() {
+                    return sequence < last.sequence;
+                }
+
+                @Override
+                public String next() {
+                    if (sequence >= last.sequence) {
+                        throw new NoSuchElementException();
+                    }
+                    if (sequence < baseCount) {
+                        return baseKey(sequence++);
+                    }
+                    current = current.next;
+                    sequence = current.sequence;
+                    return current.key;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * stress test for the {@link InfectedKeyStore}: several writers add keys (every
+ * key is reported by two of them, so half of the adds are duplicates) while
+ * readers iterate snapshots the whole time. Checks that every snapshot is
+ * consistent and that the writers are just as fast with readers running as
+ * without, meaning readers never block writers. Also checks a store started with
+ * the keys of a {@link KeySnapshot}. Usage:
+ *
+ * java InfectedKeyStoreStressTest [writers] [readers] [keys per writer]
+ *
+ * Exits with status 1 if a check fails.
+ */
+public class InfectedKeyStoreStressTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int keysPerWriter = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+
+        checkBase();
+        long withoutReaders = run(writers, 0, keysPerWriter);
+        long withReaders = run(writers, readers, keysPerWriter);
+
+        System.out.println("writers alone: " + withoutReaders + " ms, with " + readers + " readers: " + withReaders + " ms");
+        System.out.println("OK");
+    }
+
+    /**
+     * lets the writers fill a new store while the readers check snapshots of it.
+     *
+     * @return the time the writers needed in milliseconds
+     */
+    private static long run(final int writers, int readers, final int keysPerWriter) throws InterruptedException {
+        final InfectedKeyStore store = new InfectedKeyStore();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicLong snapshotsChecked = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] readerThreads = new Thread[readers];
+        for (int r = 0; r < readers; r++) {
+            readerThreads[r] = new Thread(() -> {
+                long previousSize = 0;
+                while (writing.get()) {
+                    InfectedKeyStore.Snapshot snapshot = store.snapshot();
+                    HashSet<String> seen = new HashSet<>();
+                    long count = 0;
+                    for (String key : snapshot) {
+                        if (!seen.add(key)) {
+                            fail("duplicate key in snapshot: " + key);
+                        }
+                        count++;
+                    }
+                    if (count != snapshot.size()) {
+                        fail("snapshot of size " + snapshot.size() + " iterated " + count + " keys");
+                    }
+                    if (count < previousSize) {
+                        fail("snapshot shrank from " + previousSize + " to " + count);
+                    }
+                    previousSize = count;
+                    snapshotsChecked.incrementAndGet();
+                }
+            });
+            readerThreads[r].start();
+        }
+
+        Thread[] writerThreads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            // writer w reports the keys of its own range and of the next writers range
+            final int first = w;
+            final int second = (w + 1) % writers;
+            writerThreads[w] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < keysPerWriter; i++) {
+                    store.add(first + "-" + i);
+                    store.add(second + "-" + i);
+                }
+            });
+            writerThreads[w].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread writer : writerThreads) {
+            writer.join();
+        }
+        long elapsed = (System.nanoTime() - begin) / 1000000;
+        writing.set(false);
+        for (Thread reader : readerThreads) {
+            reader.join();
+        }
+
+        long expected = (long) writers * keysPerWriter;
+        if (store.size() != expected) {
+            fail("expected " + expected + " keys, store holds " + store.size());
+        }
+        long sequence = 0;
+        for (String key : store.snapshot()) {
+            sequence++;
+            if (!store.contains(key)) {
+                fail("iterated key " + key + " is unknown to the store");
+            }
+        }
+        if (sequence != expected) {
+            fail("final snapshot iterated " + sequence + " of " + expected + " keys");
+        }
+        if (readers > 0) {
+            System.out.println(snapshotsChecked.get() + " snapshots checked");
+        }
+        return elapsed;
+    }
+
+    /**
+     * starts a store with 3000 base keys, adds 2000 more and 100 of the base keys again
+     * and checks that snapshots before, across and after the end of the base keys have
+     * the right keys in the right order.
+     */
+    private static void checkBase() {
+        List<String> expected = new ArrayList<>();
+        ByteBuffer base = ByteBuffer.allocate(3000 * 16);
+        for (int i = 0; i < 3000; i++) {
+            UUID key = UUID.randomUUID();
+            base.putLong(key.getMostSignificantBits()).putLong(key.getLeastSignificantBits());
+            expected.add(key.toString());
+        }
+        base.flip();
+        InfectedKeyStore store = new InfectedKeyStore(base, 16);
+        for (int i = 0; i < 2000; i++) {
+            String key = UUID.randomUUID().toString();
+            if (!store.add(key)) {
+                fail("new key " + key + " not added");
+            }
+            expected.add(key);
+            if (i < 100 && store.add(expected.get(i * 7))) {
+                fail("base key " + expected.get(i * 7) + " added again");
+            }
+        }
+        if (store.size() != expected.size()) {
+            fail("store with base keys holds " + store.size() + " of " + expected.size() + " keys");
+        }
+        for (String key : expected) {
+            if (!store.contains(key)) {
+                fail("store with base keys doesn't contain " + key);
+            }
+        }
+        for (long since : new long[]{0, 1, 1500, 2999, 3000, 3001, 4096, 5000}) {
+            InfectedKeyStore.Snapshot snapshot = since == 0 ? store.snapshot() : store.snapshotSince(since);
+            int index = (int) since;
+            for (String key : snapshot) {
+                if (!key.equals(expected.get(index++))) {
+                    fail("snapshot since " + since + " has " + key + " at " + index);
+                }
+            }
+            if (index != expected.size() || snapshot.size() != expected.size() - since) {
+                fail("snapshot since " + since + " ended at " + index);
+            }
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED: " + message);
+        System.exit(1);
+    }
+}
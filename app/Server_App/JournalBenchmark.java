@@ -0,0 +1,48 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * measures how many reports per second the {@link ReportJournal} makes durable with
+ * 1, 10 and 100 reporters, each of them waiting for its report to be acknowledged
+ * before sending the next one, like a connection does. Usage:
+ *
+ * java JournalBenchmark [directory] [seconds per run]
+ *
+ * The directory should be on the disk the server writes its journal to, a new
+ * subdirectory is created for every run.
+ */
+public class JournalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : "journal-benchmark");
+        final long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+
+        for (int reporters : new int[]{1, 10, 100}) {
+            final ReportJournal journal = new ReportJournal(new File(directory, "run-" + reporters + "-" + System.currentTimeMillis()),
+                    64 * 1024 * 1024, new InfectedKeyStore());
+            journal.start();
+
+            final long end = System.nanoTime() + seconds * 1000000000L;
+            final long[] counts = new long[reporters];
+            Thread[] threads = new Thread[reporters];
+            for (int r = 0; r < reporters; r++) {
+                final int index = r;
+                threads[r] = new Thread(() -> {
+                    while (System.nanoTime() < end) {
+                        journal.append(UUID.randomUUID().toString()).join();
+                        counts[index]++;
+                    }
+                });
+                threads[r].start();
+            }
+            long total = 0;
+            for (int r = 0; r < reporters; r++) {
+                threads[r].join();
+                total += counts[r];
+            }
+            journal.interrupt();
+            System.out.println(reporters + " reporters: " + total / seconds + " reports per second");
+        }
+    }
+}
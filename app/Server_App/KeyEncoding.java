@@ -0,0 +1,277 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * the ways the keys of a KEYS frame can be encoded (see {@link FrameCodec}). The client
+ * asks for one in its LIST frame, the server falls back to RAW if it doesn't know it.
+ * Keys are random UUIDs, so general purpose compression gains next to nothing; sorting
+ * them and only sending the gaps does (see KeyEncodingBenchmark).
+ */
+public enum KeyEncoding {
+    /**
+     * 16 bytes per key, in the order of the store
+     */
+    RAW((byte) 0) {
+        @Override
+        public byte[] encode(Iterable<String> keys, int count) {
+            ByteBuffer buffer = ByteBuffer.allocate(count * FrameCodec.KEY_SIZE);
+            for (String key : keys) {
+                FrameCodec.putKey(buffer, key);
+            }
+            return buffer.array();
+        }
+
+        @Override
+        public List<String> decode(byte[] data, int count) throws IOException {
+            if (data.length != count * FrameCodec.KEY_SIZE) {
+                throw new IOException("malformed keys");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            ArrayList<String> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(FrameCodec.getKey(buffer));
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * RAW compressed with deflate
+     */
+    DEFLATE((byte) 1) {
+        @Override
+        public byte[] encode(Iterable<String> keys, int count) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater();
+            try {
+                DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater, 64 * 1024);
+                out.write(RAW.encode(keys, count));
+                out.finish();
+            } catch (IOException e) {
+                // can't happen when writing to memory
+                throw new IllegalStateException(e);
+            } finally {
+                deflater.end();
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public List<String> decode(byte[] data, int count) throws IOException {
+            byte[] raw = new byte[count * FrameCodec.KEY_SIZE];
+            new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data))).readFully(raw);
+            return RAW.decode(raw, count);
+        }
+    },
+
+    /**
+     * keys sorted as unsigned 128 bit numbers, each sent as its distance to the one before,
+     * Rice coded: the lowest riceParameter(count) bits as they are, the rest unary. Takes
+     * about 2 + log2(2^128 / count) bits per key. The order of the store is lost, which
+     * doesn't matter to the client.
+     */
+    SORTED((byte) 2) {
+        @Override
+        public byte[] encode(Iterable<String> keys, int count) {
+            // UUID.compareTo compares signed, flipping the sign bits makes that an unsigned order
+            UUID[] sorted = new UUID[count];
+            int i = 0;
+            for (String key : keys) {
+                UUID uuid = UUID.fromString(key);
+                sorted[i++] = new UUID(uuid.getMostSignificantBits() ^ Long.MIN_VALUE, uuid.getLeastSignificantBits() ^ Long.MIN_VALUE);
+            }
+            Arrays.sort(sorted);
+
+            int k = riceParameter(count);
+            BitWriter bits = new BitWriter(count * 14 + 16);
+            long previousHigh = 0;
+            long previousLow = 0;
+            for (UUID uuid : sorted) {
+                long high = uuid.getMostSignificantBits() ^ Long.MIN_VALUE;
+                long low = uuid.getLeastSignificantBits() ^ Long.MIN_VALUE;
+                long gapLow = low - previousLow;
+                long gapHigh = high - previousHigh - (unsignedLess(low, previousLow) ? 1 : 0);
+                // k is always more than 64, so the quotient only comes from the high half
+                bits.writeUnary(gapHigh >>> (k - 64));
+                bits.write(gapHigh, k - 64);
+                bits.write(gapLow, 64);
+                previousHigh = high;
+                previousLow = low;
+            }
+            return bits.toByteArray();
+        }
+
+        @Override
+        public List<String> decode(byte[] data, int count) throws IOException {
+            int k = riceParameter(count);
+            BitReader bits = new BitReader(data);
+            ArrayList<String> keys = new ArrayList<>(count);
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < count; i++) {
+                long gapHigh = (bits.readUnary() << (k - 64)) | bits.read(k - 64);
+                long gapLow = bits.read(64);
+                long previousLow = low;
+                low += gapLow;
+                high += gapHigh + (unsignedLess(low, previousLow) ? 1 : 0);
+                keys.add(new UUID(high, low).toString());
+            }
+            return keys;
+        }
+    };
+
+    private final byte id;
+
+    KeyEncoding(byte id) {
+        this.id = id;
+    }
+
+    /**
+     * @return the number of the encoding in LIST and KEYS frames
+     */
+    public byte id() {
+        return id;
+    }
+
+    /**
+     * @param id the number of an encoding
+     * @return the encoding, RAW if the number is unknown
+     */
+    public static KeyEncoding forId(byte id) {
+        for (KeyEncoding encoding : values()) {
+            if (encoding.id == id) {
+                return encoding;
+            }
+        }
+        return RAW;
+    }
+
+    /**
+     * @param keys the keys, all of them UUIDs
+     * @param count the number of keys
+     * @return the encoded keys
+     */
+    public abstract byte[] encode(Iterable<String> keys, int count);
+
+    /**
+     * @param data encoded keys
+     * @param count the number of keys
+     * @return the keys
+     * @throws IOException if the data is malformed
+     */
+    public abstract List<String> decode(byte[] data, int count) throws IOException;
+
+    /**
+     * @return the number of bits of a gap between sorted keys sent as they are, so that
+     * the rest is about 1 on average: log2(2^128 / count)
+     */
+    static int riceParameter(int count) {
+        return 128 - (32 - Integer.numberOfLeadingZeros(count));
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * collects bits, the most significant first, in a growing array of bytes.
+     */
+    private static final class BitWriter {
+        private byte[] bytes;
+        private int length;
+        private int current;
+        private int bitCount;
+
+        BitWriter(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * writes the lowest n bits of value.
+         */
+        void write(long value, int n) {
+            while (n > 0) {
+                int take = Math.min(8 - bitCount, n);
+                current = (current << take) | (int) ((value >>> (n - take)) & ((1 << take) - 1));
+                bitCount += take;
+                n -= take;
+                if (bitCount == 8) {
+                    if (length == bytes.length) {
+                        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    }
+                    bytes[length++] = (byte) current;
+                    current = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+
+        /**
+         * writes value one bits followed by a zero bit.
+         */
+        void writeUnary(long value) {
+            for (; value > 64; value -= 64) {
+                write(-1L, 64);
+            }
+            write(-1L, (int) value);
+            write(0, 1);
+        }
+
+        byte[] toByteArray() {
+            if (bitCount > 0) {
+                write(0, 8 - bitCount);
+            }
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * reads what a BitWriter wrote.
+     */
+    private static final class BitReader {
+        private final byte[] bytes;
+        private int position;
+        private int current;
+        private int bitsLeft;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int n) throws IOException {
+            long value = 0;
+            while (n > 0) {
+                if (bitsLeft == 0) {
+                    if (position == bytes.length) {
+                        throw new IOException("malformed keys");
+                    }
+                    current = bytes[position++] & 0xff;
+                    bitsLeft = 8;
+                }
+                int take = Math.min(bitsLeft, n);
+                value = (value << take) | ((current >>> (bitsLeft - take)) & ((1 << take) - 1));
+                bitsLeft -= take;
+                n -= take;
+            }
+            return value;
+        }
+
+        long readUnary() throws IOException {
+            long value = 0;
+            while (read(1) == 1) {
+                value++;
+            }
+            return value;
+        }
+    }
+}
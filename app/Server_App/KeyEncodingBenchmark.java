@@ -0,0 +1,100 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * compares the bytes a full list download takes and the CPU time needed to encode it
+ * (server) and decode it again (app) for the text protocol, the text protocol gzipped
+ * and every {@link KeyEncoding} of protocol version 2. Usage:
+ *
+ * java -Xmx4g KeyEncodingBenchmark [keys...]
+ *
+ * for example "java -Xmx4g KeyEncodingBenchmark 100000 1000000 5000000" (the default).
+ */
+public class KeyEncodingBenchmark {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        String[] counts = args.length > 0 ? args : new String[]{"100000", "1000000", "5000000"};
+        for (String argument : counts) {
+            int count = Integer.parseInt(argument);
+            ArrayList<String> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(UUID.randomUUID().toString());
+            }
+            System.out.println(count + " keys:");
+            // the first round warms up the JIT, only the second one is printed
+            for (int round = 0; round < 2; round++) {
+                text(keys, false, round == 1);
+                text(keys, true, round == 1);
+                for (KeyEncoding encoding : KeyEncoding.values()) {
+                    frame(keys, encoding, round == 1);
+                }
+            }
+        }
+    }
+
+    private static void text(List<String> keys, boolean gzip, boolean print) throws IOException {
+        long start = THREADS.getCurrentThreadCpuTime();
+        StringBuilder lines = new StringBuilder();
+        for (String key : keys) {
+            lines.append(key).append('\n');
+        }
+        lines.append("done\n");
+        byte[] data = lines.toString().getBytes();
+        if (gzip) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            GZIPOutputStream out = new GZIPOutputStream(bytes, 64 * 1024);
+            out.write(data);
+            out.finish();
+            data = bytes.toByteArray();
+        }
+        long encoded = THREADS.getCurrentThreadCpuTime();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(gzip
+                ? new GZIPInputStream(new ByteArrayInputStream(data), 64 * 1024) : new ByteArrayInputStream(data)));
+        ArrayList<String> decoded = new ArrayList<>(keys.size());
+        String line;
+        while (!(line = reader.readLine()).equals("done")) {
+            decoded.add(line);
+        }
+        long end = THREADS.getCurrentThreadCpuTime();
+        check(decoded.size() == keys.size());
+        if (print) {
+            print(gzip ? "text, gzip" : "text", data.length, keys.size(), encoded - start, end - encoded);
+        }
+    }
+
+    private static void frame(List<String> keys, KeyEncoding encoding, boolean print) throws IOException {
+        long start = THREADS.getCurrentThreadCpuTime();
+        byte[] data = encoding.encode(keys, keys.size());
+        long encoded = THREADS.getCurrentThreadCpuTime();
+        List<String> decoded = encoding.decode(data, keys.size());
+        long end = THREADS.getCurrentThreadCpuTime();
+        check(decoded.size() == keys.size());
+        if (print) {
+            print(encoding.toString(), data.length, keys.size(), encoded - start, end - encoded);
+        }
+    }
+
+    private static void print(String name, long bytes, int count, long encodeNanos, long decodeNanos) {
+        System.out.println(String.format("  %-12s %,14d bytes (%5.2f per key), encode %6d ms, decode %6d ms",
+                name, bytes, (double) bytes / count, encodeNanos / 1000000, decodeNanos / 1000000));
+    }
+
+    private static void check(boolean condition) {
+        if (!condition) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+    }
+}
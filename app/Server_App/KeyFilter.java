@@ -0,0 +1,103 @@
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * a Bloom filter over keys of infected users, sent to clients that only need to know
+ * whether a key might be among them instead of all keys (see FILTER in {@link FrameCodec}).
+ * It never misses a key that was added, but answers true for other keys with the chosen
+ * false positive rate. Takes about 1.44 * log2(1 / rate) bits per key, 10 bits at 1 %,
+ * while a key takes about 118 bits in the smallest {@link KeyEncoding}.
+ *
+ * The bit positions of a key are derived from its UUID (see hash()). A client testing
+ * keys has to derive them the same way, so they can't change within version 2 of the protocol.
+ */
+public class KeyFilter {
+    private final long[] words;
+    private final int bits;
+    private final int hashes;
+
+    /**
+     * @param keys the keys the filter is for, all of them UUIDs
+     * @param falsePositiveRate share of other keys the filter answers true for, between 0 and 1
+     */
+    public KeyFilter(InfectedKeyStore.Snapshot keys, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("false positive rate " + falsePositiveRate);
+        }
+        long count = Math.max(1, keys.size());
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-count * Math.log(falsePositiveRate) / (ln2 * ln2));
+        if (optimalBits > Integer.MAX_VALUE - 63) {
+            throw new IllegalArgumentException(keys.size() + " keys don't fit into one filter");
+        }
+        // whole longs, at least one
+        bits = (int) Math.max(64, (optimalBits + 63) / 64 * 64);
+        hashes = (int) Math.max(1, Math.min(30, Math.round((double) bits / count * ln2)));
+        words = new long[bits / 64];
+        for (String key : keys) {
+            add(key);
+        }
+    }
+
+    private void add(String key) {
+        UUID uuid = UUID.fromString(key);
+        long hash = hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return true if the key might have been added, false if it certainly wasn't
+     */
+    public boolean mightContain(String key) {
+        UUID uuid = UUID.fromString(key);
+        long hash = hash(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+            if ((words[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * mixes both halves of a UUID.
+     */
+    static long hash(long high, long low) {
+        return mix(high ^ mix(low));
+    }
+
+    private static long mix(long h) {
+        // finalizer of MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    /**
+     * writes the bits of the filter, a long at a time.
+     */
+    public void writeTo(ByteBuffer target) {
+        for (long word : words) {
+            target.putLong(word);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * binary copy of all keys in the {@link InfectedKeyStore}, so the server doesn't need to
+ * parse the whole text history at startup. The file starts with a 32 byte header
+ * (magic "CTKS", format version, number of keys and the first journal segment that is
+ * not contained in the snapshot), followed by the keys in store order, each as 16 bytes
+ * (the two halves of the UUID, big endian). At startup the file is memory mapped, the
+ * {@link InfectedKeyStore} serves its keys from the mapping, and only the journal segments
+ * written after it are replayed. Compaction moves a new snapshot over the file while the
+ * old one is mapped, the mapping keeps the contents of the old file.
+ */
+public class KeySnapshot {
+    private static final int MAGIC = 0x43544b53;     // "CTKS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int KEY_SIZE = 16;
+
+    private final ByteBuffer keys;
+    private final int firstSegment;
+
+    private KeySnapshot(ByteBuffer keys, int firstSegment) {
+        this.keys = keys;
+        this.firstSegment = firstSegment;
+    }
+
+    /**
+     * @return the keys of the snapshot, 16 bytes each, read only
+     */
+    public ByteBuffer keys() {
+        return keys;
+    }
+
+    /**
+     * @return the number of keys in the snapshot
+     */
+    public int keyCount() {
+        return keys.capacity() / KEY_SIZE;
+    }
+
+    /**
+     * @return the first journal segment that has to be replayed after the snapshot
+     */
+    public int firstSegment() {
+        return firstSegment;
+    }
+
+    /**
+     * checks if a reported key can be stored in a snapshot, which is the case for UUIDs
+     * in the form the app sends them (lower case, as produced by UUID.toString()).
+     *
+     * @param key the reported key
+     * @return true if the key is a UUID in its canonical form
+     */
+    public static boolean isValidKey(String key) {
+        try {
+            return UUID.fromString(key).toString().equals(key);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * writes the keys of a snapshot of the store. The file is written next to the
+     * target first and then moved over it, so there always is a complete snapshot.
+     *
+     * @param file where the snapshot is stored
+     * @param keys the keys, all of them valid (see isValidKey)
+     * @param firstSegment the first journal segment that may contain keys that are not in keys
+     * @throws IOException if writing fails
+     */
+    public static void write(File file, InfectedKeyStore.Snapshot keys, int firstSegment) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(keys.size()).putInt(firstSegment);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(KEY_SIZE * 4096);
+            for (String key : keys) {
+                if (!isValidKey(key)) {
+                    throw new IOException("key can't be stored in a snapshot: " + key);
+                }
+                UUID uuid = UUID.fromString(key);
+                buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * maps a snapshot into memory. Its keys are read from the file while the server runs,
+     * they aren't copied to the heap.
+     *
+     * @param file the snapshot
+     * @return the snapshot
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public static KeySnapshot open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not a key snapshot");
+            }
+            long count = buffer.getLong();
+            int firstSegment = buffer.getInt();
+            if (buffer.capacity() != HEADER_SIZE + count * KEY_SIZE) {
+                throw new IOException(file + " is incomplete");
+            }
+            buffer.position(HEADER_SIZE);
+            return new KeySnapshot(buffer.slice().asReadOnlyBuffer(), firstSegment);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * compares answering "requestlist" the way {@link Connection} used to (encoding every
+ * key again and writing it on its own) with writing the buffer of the
+ * {@link ListResponseCache}. Both write to /dev/null, so every write is still a
+ * system call, but no network is involved. Usage:
+ *
+ * java ListResponseBenchmark [keys] [requests]
+ */
+public class ListResponseBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        InfectedKeyStore store = new InfectedKeyStore();
+        for (int i = 0; i < keys; i++) {
+            store.add(UUID.randomUUID().toString());
+        }
+        ListResponseCache cache = new ListResponseCache(store, ListResponseCache::lines);
+
+        FileOutputStream devNull = new FileOutputStream("/dev/null");
+        FileChannel channel = devNull.getChannel();
+
+        // first round warms up the JIT, second round is measured
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                perLine(store, devNull);
+            }
+            long perLine = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                ByteBuffer buffer = cache.fullResponse();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            long cached = System.nanoTime() - start;
+
+            if (round == 1) {
+                System.out.println(keys + " keys, per request: per line " + perLine / requests / 1000
+                        + " us, cached buffer " + cached / requests / 1000 + " us");
+            }
+        }
+        devNull.close();
+    }
+
+    private static void perLine(InfectedKeyStore store, OutputStream outputStream) throws IOException {
+        for (String key : store.snapshot()) {
+            outputStream.write((key + "\n").getBytes());
+        }
+        outputStream.write("done\n".getBytes());
+    }
+}
@@ -0,0 +1,84 @@
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * keeps an answer that covers all keys encoded in one read-only direct buffer, so it isn't
+ * built again for every client: the answer to "requestlist" (all keys, one per line,
+ * followed by "done", see lines()), a KEYS frame holding all keys or a FILTER frame over
+ * all keys (see {@link FrameCodec}). The buffer is only rebuilt after new keys were added
+ * to the store.
+ */
+public class ListResponseCache {
+    private final InfectedKeyStore store;
+    private final Function<InfectedKeyStore.Snapshot, ByteBuffer> encoder;
+
+    /**
+     * the answer and the sequence number of the last key it contains, replaced as a whole
+     */
+    private volatile Entry entry = new Entry(-1, null);
+
+    /**
+     * @param store the keys
+     * @param encoder builds the answer from a snapshot of all keys
+     */
+    public ListResponseCache(InfectedKeyStore store, Function<InfectedKeyStore.Snapshot, ByteBuffer> encoder) {
+        this.store = store;
+        this.encoder = encoder;
+    }
+
+    /**
+     * encodes the answer to "requestlist".
+     *
+     * @param snapshot the keys
+     * @return all keys, one per line, followed by "done"
+     */
+    public static ByteBuffer lines(InfectedKeyStore.Snapshot snapshot) {
+        StringBuilder builder = new StringBuilder();
+        for (String key : snapshot) {
+            builder.append(key).append('\n');
+        }
+        builder.append("done\n");
+        return ByteBuffer.wrap(builder.toString().getBytes());
+    }
+
+    /**
+     * @return the answer, a view of its own for every caller, so the position of the buffer
+     * can be moved while writing it
+     */
+    public ByteBuffer fullResponse() {
+        Entry current = entry;
+        if (current.sequence != store.size()) {
+            current = rebuild();
+        }
+        return current.buffer.duplicate();
+    }
+
+    /**
+     * encodes the answer again, unless another thread just did that.
+     */
+    private synchronized Entry rebuild() {
+        InfectedKeyStore.Snapshot snapshot = store.snapshot();
+        Entry current = entry;
+        if (current.sequence == snapshot.lastSequence()) {
+            return current;
+        }
+
+        ByteBuffer encoded = encoder.apply(snapshot);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.remaining());
+        buffer.put(encoded);
+        buffer.flip();
+        current = new Entry(snapshot.lastSequence(), buffer.asReadOnlyBuffer());
+        entry = current;
+        return current;
+    }
+
+    private static final class Entry {
+        final long sequence;
+        final ByteBuffer buffer;
+
+        Entry(long sequence, ByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * load test for the server: opens a given number of connections, keeps all
+ * of them open at the same time and then lets every one of them request the
+ * list of infected keys. Reports the time from starting to connect until the
+ * first byte of the answer arrived and, if the process id of a server running
+ * on the same machine is given, the servers peak resident memory. Usage:
+ *
+ * java LoadTest [host] [port] [clients] [server pid]
+ *
+ * To compare the connection modes of the server, start it with each of
+ * "nio", "platform" and "pool" (see {@link ServerEntry}) and run this
+ * with 1000, 10000 and 50000 clients, restarting the server in between.
+ *
+ * Holding 10000 sockets needs a higher limit of open files on both sides
+ * (for example "ulimit -n 65536").
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8000;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+
+        String serverPid = args.length > 3 ? args[3] : null;
+
+        // open all connections and keep them open, every one of them requests the list right away
+        long start = System.nanoTime();
+        Selector selector = Selector.open();
+        ArrayList<SocketChannel> channels = new ArrayList<>();
+        ArrayList<Tail> tails = new ArrayList<>();
+        int answered = 0;
+        int failed = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (int i = 0; i < clients; i++) {
+            Tail tail = new Tail(System.nanoTime());
+            try {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+                channel.write(ByteBuffer.wrap("requestlist\n".getBytes()));
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, tail);
+                channels.add(channel);
+                tails.add(tail);
+            } catch (IOException e) {
+                System.out.println("connection " + i + " failed: " + e);
+                break;
+            }
+            // collect answers while still connecting, otherwise they would wait for the last connection
+            selector.selectNow();
+            int[] progress = readAnswers(selector, buffer);
+            answered += progress[0];
+            failed += progress[1];
+        }
+        long connected = System.nanoTime();
+        System.out.println(channels.size() + " of " + clients + " connections open after " + millis(start, connected) + " ms");
+
+        // wait until all of them received "done"
+        while (answered + failed < channels.size()) {
+            if (selector.select(10000) == 0) {
+                System.out.println("no progress for 10 seconds, giving up");
+                break;
+            }
+            int[] progress = readAnswers(selector, buffer);
+            answered += progress[0];
+            failed += progress[1];
+        }
+        long done = System.nanoTime();
+        System.out.println(answered + " answered, " + failed + " failed after " + millis(start, done) + " ms");
+
+        // connect to first byte latencies
+        long[] latencies = new long[tails.size()];
+        int count = 0;
+        for (Tail tail : tails) {
+            if (tail.firstByte != 0) {
+                latencies[count++] = tail.firstByte - tail.connectStart;
+            }
+        }
+        Arrays.sort(latencies, 0, count);
+        if (count > 0) {
+            System.out.println("first byte after: p50 " + micros(latencies[count / 2]) + " us, p99 "
+                    + micros(latencies[(int) (count * 0.99)]) + " us, max " + micros(latencies[count - 1]) + " us");
+        }
+        if (serverPid != null) {
+            System.out.println("server peak memory: " + peakResidentMemory(serverPid));
+        }
+
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+    }
+
+    /**
+     * reads from all connections the selector found readable.
+     *
+     * @return number of connections that received "done" and of failed ones
+     */
+    private static int[] readAnswers(Selector selector, ByteBuffer buffer) {
+        int[] progress = new int[2];
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+            Tail tail = (Tail) key.attachment();
+            buffer.clear();
+            int read;
+            try {
+                read = ((SocketChannel) key.channel()).read(buffer);
+            } catch (IOException e) {
+                read = -1;
+            }
+            if (read < 0) {
+                key.cancel();
+                progress[1]++;
+                continue;
+            }
+            if (tail.firstByte == 0 && read > 0) {
+                tail.firstByte = System.nanoTime();
+            }
+            if (tail.endsWithDone(buffer)) {
+                key.cancel();
+                progress[0]++;
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * reads the peak resident set size (VmHWM) of a process on linux.
+     */
+    private static String peakResidentMemory(String pid) {
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader("/proc/" + pid + "/status"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmHWM:")) {
+                    reader.close();
+                    return line.substring(6).trim();
+                }
+            }
+            reader.close();
+        } catch (IOException e) {
+            System.out.println(e);
+        }
+        return "unknown";
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    private static long millis(long from, long to) {
+        return (to - from) / 1000000;
+    }
+
+    /**
+     * remembers the last bytes received on a connection, to recognize the
+     * "done" line even if it arrives split up.
+     */
+    private static class Tail {
+        private final byte[] last = new byte[6];
+        private final long connectStart;
+        private long firstByte;
+
+        Tail(long connectStart) {
+            this.connectStart = connectStart;
+        }
+
+        boolean endsWithDone(ByteBuffer buffer) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                System.arraycopy(last, 1, last, 0, last.length - 1);
+                last[last.length - 1] = buffer.get();
+            }
+            return new String(last).equals("\ndone\n") || new String(last, 1, 5).equals("done\n") && last[0] == 0;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * the only writer of reported keys to disk. Connections hand their reports to a queue,
+ * this thread takes everything that queued up in the meantime, appends it to the
+ * current segment file with one write and one fsync, and only then adds the keys to
+ * the {@link InfectedKeyStore} and completes the futures the connections wait on. So
+ * a report is acknowledged only after it is durable, and many reports share one fsync.
+ *
+ * The journal is a directory of segment files ("segment-000001.log", ...), each holding
+ * one key per line. A new segment is started on every startup, whenever the current
+ * one reached its maximum size and when a {@link KeySnapshot} is taken (see roll()).
+ */
+public class ReportJournal extends Thread {
+    /**
+     * most reports written with one fsync
+     */
+    private static final int MAX_BATCH = 4096;
+
+    private final File directory;
+    private final long maxSegmentSize;
+    private final InfectedKeyStore store;
+
+    private final BlockingQueue<Report> queue = new LinkedBlockingQueue<>();
+
+    private FileChannel segment;
+    private int segmentNumber;
+    /**
+     * size of the current segment up to the end of the last batch that was written completely
+     */
+    private long committed;
+
+    /**
+     * a key waiting to be written and the future completed when it is durable
+     */
+    private static class Report {
+        final String key;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        Report(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * request to start a new segment, see roll()
+     */
+    private static final class Roll extends Report {
+        final CompletableFuture<Integer> segment = new CompletableFuture<>();
+
+        Roll() {
+            super(null);
+        }
+    }
+
+    /**
+     * @param directory where the segments are kept, created if necessary
+     * @param maxSegmentSize size in bytes after which a new segment is started
+     * @param store where the keys are added after they were written
+     * @throws IOException if the first segment can't be created
+     */
+    public ReportJournal(File directory, long maxSegmentSize, InfectedKeyStore store) throws IOException {
+        super("report-journal");
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.store = store;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create journal directory " + directory);
+        }
+        File[] segments = segments(directory);
+        segmentNumber = segments.length == 0 ? 0 : number(segments[segments.length - 1]);
+        openNextSegment();
+        setDaemon(true);
+    }
+
+    /**
+     * queues a report to be written.
+     *
+     * @param key the reported key
+     * @return completed once the key is durable (and in the store), or completed
+     * exceptionally if writing it failed
+     */
+    public CompletableFuture<Void> append(String key) {
+        Report report = new Report(key);
+        queue.add(report);
+        return report.durable;
+    }
+
+    /**
+     * starts a new segment once all reports queued before are written and in the store.
+     * Every key in the segments before the new one is then in the store, so after taking
+     * a {@link KeySnapshot} of the store, these segments can be deleted (see compact()).
+     *
+     * @return completed with the number of the new segment
+     */
+    public CompletableFuture<Integer> roll() {
+        Roll roll = new Roll();
+        queue.add(roll);
+        return roll.segment;
+    }
+
+    /**
+     * writes a new {@link KeySnapshot} of the store and deletes the segments it contains.
+     * Runs in the background while reports keep coming in.
+     *
+     * @param snapshotFile where the snapshot is stored
+     * @throws IOException if starting the new segment or writing the snapshot fails, the
+     * segments are kept then
+     */
+    public void compact(File snapshotFile) throws IOException {
+        int firstSegment;
+        try {
+            firstSegment = roll().join();
+        } catch (CompletionException e) {
+            // the journal thread failed to open the new segment
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        KeySnapshot.write(snapshotFile, store.snapshot(), firstSegment);
+        for (File file : segments(directory)) {
+            if (number(file) < firstSegment && !file.delete()) {
+                System.out.println("couldn't delete " + file);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        ArrayList<Report> batch = new ArrayList<>();
+        ArrayList<Roll> rolls = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                if (batch.get(i) instanceof Roll) {
+                    rolls.add((Roll) batch.remove(i));
+                }
+            }
+
+            try {
+                write(batch);
+                for (Report report : batch) {
+                    store.add(report.key);
+                    report.durable.complete(null);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                for (Report report : batch) {
+                    report.durable.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+
+            // after the reports are answered, failing to start a new segment doesn't fail them,
+            // the current one is kept and the next batch tries again
+            if (committed >= maxSegmentSize) {
+                try {
+                    openNextSegment();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // the keys written before are all in the store now
+            for (Roll roll : rolls) {
+                try {
+                    openNextSegment();
+                    roll.segment.complete(segmentNumber);
+                } catch (IOException e) {
+                    roll.segment.completeExceptionally(e);
+                }
+            }
+            rolls.clear();
+        }
+    }
+
+    /**
+     * appends a batch of reports to the current segment and forces it to disk. If that
+     * fails, the segment is cut back to where the batch started, so the next batch doesn't
+     * continue a line of this one.
+     */
+    private void write(ArrayList<Report> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Report report : batch) {
+            lines.append(report.key).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes());
+        // a batch that failed before and couldn't be cut back then
+        if (segment.position() != committed) {
+            truncate();
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            try {
+                truncate();
+            } catch (IOException t) {
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+        committed = segment.position();
+    }
+
+    /**
+     * drops everything after the last complete batch from the current segment.
+     */
+    private void truncate() throws IOException {
+        segment.truncate(committed);
+        segment.position(committed);
+    }
+
+    /**
+     * continues in a new segment. The current one is only closed once the new one is
+     * open, so if that fails, the journal keeps writing to the current one.
+     */
+    private void openNextSegment() throws IOException {
+        File file = new File(directory, String.format("segment-%06d.log", segmentNumber + 1));
+        FileChannel next = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                // everything in it was forced before, the new segment is used either way
+                e.printStackTrace();
+            }
+        }
+        segment = next;
+        segmentNumber++;
+        committed = 0;
+    }
+
+    /**
+     * reads the keys written to the journal in a directory, oldest first. A last line without
+     * line break is the remainder of a write that was interrupted, it was never acknowledged
+     * and is skipped.
+     *
+     * @param directory the journal directory
+     * @param firstSegment segments before this one are skipped, their keys are in the snapshot
+     * @param store where the keys are added
+     * @throws IOException if a segment can't be read
+     */
+    public static void replay(File directory, int firstSegment, InfectedKeyStore store) throws IOException {
+        for (File file : segments(directory)) {
+            if (number(file) < firstSegment) {
+                continue;
+            }
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    String key = new String(bytes, start, i - start);
+                    if (KeySnapshot.isValidKey(key)) {
+                        store.add(key);
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the segment files in a directory, ordered by their number
+     */
+    private static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.matches("segment-\\d{6}\\.log"));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int number(File segment) {
+        return Integer.parseInt(segment.getName().substring("segment-".length(), "segment-".length() + 6));
+    }
+}
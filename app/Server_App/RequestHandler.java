@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * handles the line based protocol spoken between the app and the server. "requestlist"
+ * is answered with all keys of infected users followed by "done", "requestlist since n"
+ * with the keys added after the key with sequence number n (see {@link InfectedKeyStore})
+ * followed by "done m", m being the sequence number of the last key the client has now.
+ * If the server doesn't know n, it answers "reset" and all keys instead, telling the client
+ * to drop the keys it has. A line starting with the password "123" reports the key of an
+ * infected user (keys are UUIDs), it is answered with "ok" once the key is written to the
+ * {@link ReportJournal} (or "failed"). "version 2" is answered with the same line, after
+ * that the client and the server exchange frames instead of lines (see {@link FrameCodec}).
+ * Both the thread per connection server and the selector based server pass their lines
+ * and frames in here, so they behave the same.
+ */
+public class RequestHandler {
+    /**
+     * where the answers to a request are passed to, independent of how the
+     * connection to the client is handled.
+     */
+    public interface Responder {
+        void send(String msg) throws IOException;
+
+        /**
+         * sends the remaining bytes of a buffer. The buffer may be shared with
+         * other connections, only its position may be changed.
+         */
+        void send(ByteBuffer data) throws IOException;
+
+        /**
+         * sends ok once a report is durable or failed if writing it failed. No further
+         * lines or frames of the same client may be handled before that.
+         */
+        void acknowledge(CompletableFuture<Void> durable, ByteBuffer ok, ByteBuffer failed) throws IOException;
+
+        /**
+         * everything the client sends after the current line is a frame, see {@link FrameCodec}.
+         */
+        void useFrames();
+    }
+
+    /**
+     * the encoded answer to "requestlist", shared by all connections
+     */
+    private final ListResponseCache listResponse = new ListResponseCache(ServerEntry.infectedKeys, ListResponseCache::lines);
+
+    /**
+     * all keys as KEYS frame in each encoding (indexed by its ordinal), the answer to a
+     * LIST frame of a client without keys or with an unknown cursor
+     */
+    private final ListResponseCache[] framedListResponses = new ListResponseCache[KeyEncoding.values().length];
+
+    /**
+     * the FILTER frame over all keys at each of FrameCodec.FALSE_POSITIVE_RATES (same index),
+     * the answer to a FILTER_REQUEST of a client without keys or with an unknown cursor
+     */
+    private final ListResponseCache[] filterResponses = new ListResponseCache[FrameCodec.FALSE_POSITIVE_RATES.length];
+
+    public RequestHandler() {
+        for (KeyEncoding encoding : KeyEncoding.values()) {
+            // a client that gets all keys has to drop the ones it has
+            framedListResponses[encoding.ordinal()] = new ListResponseCache(ServerEntry.infectedKeys,
+                    snapshot -> FrameCodec.keys(true, snapshot, encoding));
+        }
+        for (int i = 0; i < filterResponses.length; i++) {
+            double rate = FrameCodec.FALSE_POSITIVE_RATES[i];
+            filterResponses[i] = new ListResponseCache(ServerEntry.infectedKeys,
+                    snapshot -> FrameCodec.filter(snapshot, new KeyFilter(snapshot, rate)));
+        }
+    }
+
+    /**
+     * handles one line received from a client.
+     *
+     * @param line the line without its line break
+     * @param responder the connection the answer is sent to
+     * @throws IOException if sending the answer fails
+     */
+    public void handle(String line, Responder responder) throws IOException {
+        if (line.equals("requestlist")) {
+            responder.send(listResponse.fullResponse());
+        } else if (line.startsWith("requestlist since ")) {
+            sendSince(line.substring("requestlist since ".length()), responder);
+        } else if (line.equals(FrameCodec.VERSION_LINE)) {
+            responder.send(FrameCodec.VERSION_LINE + "\n");
+            responder.useFrames();
+        } else {
+            System.out.println(line);
+            if (line.startsWith("123")) {
+                report(line.substring(3), responder, ByteBuffer.wrap("ok\n".getBytes()), ByteBuffer.wrap("failed\n".getBytes()));
+            }
+        }
+    }
+
+    /**
+     * handles one frame received from a client that switched to version 2 of the protocol.
+     *
+     * @param type the type of the frame
+     * @param payload the payload of the frame
+     * @param responder the connection the answer is sent to
+     * @throws IOException if the frame is malformed or sending the answer fails
+     */
+    public void handleFrame(byte type, ByteBuffer payload, Responder responder) throws IOException {
+        if (type == FrameCodec.LIST) {
+            long cursor = FrameCodec.getCursor(payload);
+            KeyEncoding encoding = FrameCodec.getEncoding(payload);
+            InfectedKeyStore.Snapshot snapshot = cursor == 0 ? null : ServerEntry.infectedKeys.snapshotSince(cursor);
+            if (snapshot == null) {
+                responder.send(framedListResponses[encoding.ordinal()].fullResponse());
+            } else {
+                responder.send(FrameCodec.keys(false, snapshot, encoding));
+            }
+        } else if (type == FrameCodec.FILTER_REQUEST) {
+            long cursor = FrameCodec.getFilterCursor(payload);
+            double falsePositiveRate = FrameCodec.getFalsePositiveRate(payload);
+            InfectedKeyStore.Snapshot snapshot = cursor == 0 ? null : ServerEntry.infectedKeys.snapshotSince(cursor);
+            if (snapshot == null) {
+                responder.send(fullFilter(falsePositiveRate));
+            } else {
+                responder.send(FrameCodec.filter(snapshot, new KeyFilter(snapshot, falsePositiveRate)));
+            }
+        } else if (type == FrameCodec.REPORT) {
+            String key = FrameCodec.getReportedKey(payload);
+            if (FrameCodec.getPassword(payload).equals("123")) {
+                report(key, responder, FrameCodec.ack(true), FrameCodec.ack(false));
+            } else {
+                responder.acknowledge(CompletableFuture.<Void>failedFuture(new IllegalArgumentException("wrong password")),
+                        FrameCodec.ack(true), FrameCodec.ack(false));
+            }
+        } else {
+            throw new IOException("unknown frame type " + type);
+        }
+    }
+
+    /**
+     * @param falsePositiveRate one of FrameCodec.FALSE_POSITIVE_RATES
+     * @return the cached FILTER frame over all keys at that rate
+     */
+    private ByteBuffer fullFilter(double falsePositiveRate) {
+        for (int i = 0; i < filterResponses.length; i++) {
+            if (FrameCodec.FALSE_POSITIVE_RATES[i] == falsePositiveRate) {
+                return filterResponses[i].fullResponse();
+            }
+        }
+        throw new IllegalArgumentException("false positive rate " + falsePositiveRate);
+    }
+
+    /**
+     * stores a reported key and acknowledges it once it is durable.
+     *
+     * @param key the reported key
+     * @param responder the connection the answer is sent to
+     * @param ok answer if the key is stored
+     * @param failed answer if it isn't
+     */
+    private void report(String key, Responder responder, ByteBuffer ok, ByteBuffer failed) throws IOException {
+        // a key that was reported before is not written again
+        if (!KeySnapshot.isValidKey(key)) {
+            responder.acknowledge(CompletableFuture.<Void>failedFuture(new IllegalArgumentException(key)), ok, failed);
+        } else if (ServerEntry.infectedKeys.contains(key)) {
+            responder.acknowledge(CompletableFuture.<Void>completedFuture(null), ok, failed);
+        } else {
+            responder.acknowledge(ServerEntry.journal.append(key), ok, failed);
+        }
+    }
+
+    /**
+     * sends the keys a client doesn't have yet, see the description of this class.
+     *
+     * @param cursor the sequence number sent by the client
+     * @param responder the connection the answer is sent to
+     * @throws IOException if sending the answer fails
+     */
+    private void sendSince(String cursor, Responder responder) throws IOException {
+        InfectedKeyStore.Snapshot snapshot;
+        try {
+            snapshot = ServerEntry.infectedKeys.snapshotSince(Long.parseLong(cursor.trim()));
+        } catch (NumberFormatException e) {
+            snapshot = null;
+        }
+        if (snapshot == null) {
+            responder.send("reset\n");
+            snapshot = ServerEntry.infectedKeys.snapshot();
+        }
+        for (String key : snapshot) {
+            responder.send(key + "\n");
+        }
+        responder.send("done " + snapshot.lastSequence() + "\n");
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * alternative to {@link Server} that doesn't need a thread per client. Accepted
+ * connections are handed to a small, fixed number of event loops, each of them
+ * serving its share of the clients with one java.nio Selector. Speaks the same
+ * protocol as {@link Connection} (see {@link RequestHandler}).
+ */
+public class SelectorServer extends Thread {
+    private final int serverPort;
+
+    /**
+     * the threads serving the accepted connections
+     */
+    private final EventLoop[] eventLoops;
+
+    /**
+     * handles the lines the clients send, shared by all event loops
+     */
+    private final RequestHandler requestHandler = new RequestHandler();
+
+    /**
+     * @param serverPort the port, the server is supposed to be bound to
+     * @param eventLoopCount number of threads serving the connections
+     * @throws IOException if a selector can't be opened
+     */
+    public SelectorServer(int serverPort, int eventLoopCount) throws IOException {
+        this.serverPort = serverPort;
+        this.eventLoops = new EventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new EventLoop(requestHandler, i);
+        }
+    }
+
+    @Override
+    public void run() {
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        try {
+            // creates the server bound to the specified port, accepting in blocking mode in this thread
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(serverPort), 1024);
+            System.out.println("Accepting client connections with " + eventLoops.length + " event loops...");
+
+            int next = 0;
+            while (true) {
+                SocketChannel clientChannel = serverChannel.accept();
+                clientChannel.configureBlocking(false);
+
+                // distributes the connections evenly among the event loops
+                eventLoops[next].register(clientChannel);
+                next = (next + 1) % eventLoops.length;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
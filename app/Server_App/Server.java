@@ -1,9 +1,11 @@
 /* inspired by https://www.youtube.com/watch?v=cRfsUrU3RjE*/
 
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
+import java.util.concurrent.Executor;
 
 
 public class Server extends Thread {
@@ -15,24 +17,56 @@ public class Server extends Thread {
     private ArrayList<Connection> connections = new ArrayList<>();
 
     /**
-     * gets a server port (from ServerMain)
+     * handles the lines the clients send, shared by all connections
+     */
+    private final RequestHandler requestHandler = new RequestHandler();
+
+    /**
+     * runs the connections, see {@link ConnectionExecutors} for the available kinds of threads
+     */
+    private final Executor executor;
+
+    /**
+     * gets a server port (from ServerMain), every connection gets its own platform thread
      *
      * @param serverPort the port, the server is supposed to be bound to
      */
     public Server(int serverPort) {
+        this(serverPort, ConnectionExecutors.platformThreads());
+    }
+
+    /**
+     * gets a server port (from ServerMain) and the executor the connections are run with
+     *
+     * @param serverPort the port, the server is supposed to be bound to
+     * @param executor runs every accepted connection
+     */
+    public Server(int serverPort, Executor executor) {
         this.serverPort = serverPort;
+        this.executor = executor;
+    }
+
+    /**
+     * getter for the handler the connections pass their lines to.
+     *
+     * @return the request handler
+     */
+    public RequestHandler getRequestHandler() {
+        return requestHandler;
     }
 
     @Override
     public void run() {
         try {
-            // creates the server bound to the specified port
-            ServerSocket serverSocket = new ServerSocket(serverPort);
+            // creates the server bound to the specified port. Accepted through a channel, so the sockets
+            // have one too and the cached list can be written without copying it (see Connection.send)
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(serverPort));
             while (true) {
                 System.out.println("About to accept client connection...");
 
                 // wait for a client, establish connection represented in clientSocket (thread stops until new client is accepted)
-                Socket clientSocket = serverSocket.accept();
+                Socket clientSocket = serverChannel.accept().socket();
 
                 System.out.println("Accepted connection from " + clientSocket);
 
@@ -43,7 +77,7 @@ public class Server extends Thread {
                 this.connections.add(connection);
 
                 // starts the connection
-                connection.start();
+                executor.execute(connection);
 
             }
         } catch (IOException e) {
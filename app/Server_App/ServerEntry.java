@@ -1,35 +1,122 @@
 /* inspired by https://www.youtube.com/watch?v=cRfsUrU3RjE*/
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * entry point for the server
+ * entry point for the server. Usage:
+ *
+ * java ServerEntry [nio | platform | pool [poolSize]]
+ *
+ * "nio" uses the {@link SelectorServer}, the other modes the blocking {@link Server}
+ * with the corresponding {@link ConnectionExecutors} (default is "platform").
  */
 public class ServerEntry {
-    public static ArrayList<String> infectedList;
+    /**
+     * keys of infected users, read and extended by all connections at the same time
+     */
+    public static InfectedKeyStore infectedKeys;
+
+    /**
+     * writes reported keys to disk before they are added to infectedKeys
+     */
+    public static ReportJournal journal;
 
     public static void main(String[] args) {
-        infectedList = new ArrayList<>();
-        try {
-            BufferedReader br = new BufferedReader(new FileReader("infectedlist.txt"));
+        File snapshotFile = new File("infectedlist.snapshot");
+        File journalDirectory = new File("journal");
 
-            String line = null;
-            while ((line = br.readLine()) != null) {
-                infectedList.add(line);
+        // the snapshot contains everything up to a journal segment, only the segments after it are read.
+        // Without a snapshot, the keys reported before the journal existed are read from the text file
+        long start = System.nanoTime();
+        try {
+            int firstSegment = 0;
+            if (snapshotFile.exists()) {
+                // the keys stay in the mapped snapshot, the set of reported keys is sized for a quarter more
+                KeySnapshot snapshot = KeySnapshot.open(snapshotFile);
+                infectedKeys = new InfectedKeyStore(snapshot.keys(), snapshot.keyCount() / 4 + 1024);
+                firstSegment = snapshot.firstSegment();
+            } else {
+                infectedKeys = new InfectedKeyStore();
+                loadTextList(new File("infectedlist.txt"));
             }
+            ReportJournal.replay(journalDirectory, firstSegment, infectedKeys);
+            journal = new ReportJournal(journalDirectory, 64 * 1024 * 1024, infectedKeys);
         } catch (IOException i) {
             System.out.println(i);
+            return;
         }
+        journal.start();
+        System.out.println(infectedKeys.size() + " keys loaded in " + (System.nanoTime() - start) / 1000000 + " ms");
 
-        for(int i = 0; i < infectedList.size(); i++) {
-            System.out.println(infectedList.get(i));
-        }
+        // writes a new snapshot every ten minutes, if keys were reported in the meantime
+        ScheduledExecutorService compaction = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compaction.scheduleWithFixedDelay(new Runnable() {
+            private long compacted = -1;
+
+            @Override
+            public void run() {
+                long size = infectedKeys.size();
+                if (size == compacted) {
+                    return;
+                }
+                try {
+                    journal.compact(snapshotFile);
+                    compacted = size;
+                } catch (IOException | RuntimeException e) {
+                    // an exception leaving run() would cancel all later compactions
+                    System.out.println(e);
+                }
+            }
+        }, 1, 10, TimeUnit.MINUTES);
 
         int port = 8000;        // specified port the server is supposed to be bound to
-        Server server = new Server(port);       // actual server (thread)
-        server.start();
+
+        // "nio" serves all clients with a few selector threads instead of one thread per client,
+        // "platform" and "pool" choose the threads the blocking connections run on
+        String mode = args.length > 0 ? args[0] : "platform";
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (mode.equals("nio")) {
+            try {
+                SelectorServer server = new SelectorServer(port, threads);
+                server.start();
+            } catch (IOException i) {
+                System.out.println(i);
+            }
+        } else {
+            int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : threads * 16;
+            Server server = new Server(port, ConnectionExecutors.forMode(mode, poolSize));       // actual server (thread)
+            server.start();
+        }
+    }
+
+    /**
+     * reads the list of keys kept as text file before there was a journal.
+     *
+     * @param file the text file, one key per line
+     */
+    private static void loadTextList(File file) {
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(file));
+
+            String line = null;
+            while ((line = br.readLine()) != null) {
+                if (KeySnapshot.isValidKey(line)) {
+                    infectedKeys.add(line);
+                }
+            }
+            br.close();
+        } catch (IOException i) {
+            System.out.println(i);
+        }
     }
 }
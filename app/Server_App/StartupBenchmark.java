@@ -0,0 +1,79 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.UUID;
+
+/**
+ * compares how long the server needs to rebuild its list at startup from the text
+ * file (the way it used to) and from a {@link KeySnapshot}, and how much heap the
+ * store takes afterwards. Usage:
+ *
+ * java -Xmx4g StartupBenchmark [directory] [keys...]
+ *
+ * for example "java -Xmx4g StartupBenchmark /tmp/startup 1000000 10000000".
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "startup-benchmark");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't create " + directory);
+        }
+
+        for (int a = 1; a < Math.max(args.length, 2); a++) {
+            int keys = args.length > a ? Integer.parseInt(args[a]) : 1000000;
+            File text = new File(directory, "infectedlist-" + keys + ".txt");
+            File snapshot = new File(directory, "infectedlist-" + keys + ".snapshot");
+
+            // the same keys in both formats
+            InfectedKeyStore original = new InfectedKeyStore();
+            PrintWriter writer = new PrintWriter(text);
+            for (int i = 0; i < keys; i++) {
+                String key = UUID.randomUUID().toString();
+                original.add(key);
+                writer.println(key);
+            }
+            writer.close();
+            KeySnapshot.write(snapshot, original.snapshot(), 1);
+            original = null;
+
+            // the snapshot first, the garbage of the text file would be collected while measuring it
+            long heap = usedHeap();
+            long start = System.nanoTime();
+            InfectedKeyStore fromSnapshot = new InfectedKeyStore(KeySnapshot.open(snapshot).keys(), 1024);
+            long snapshotMillis = (System.nanoTime() - start) / 1000000;
+            long snapshotHeap = usedHeap() - heap;
+            if (fromSnapshot.size() != keys) {
+                throw new IllegalStateException("snapshot store holds " + fromSnapshot.size() + " keys");
+            }
+            fromSnapshot = null;
+
+            heap = usedHeap();
+            start = System.nanoTime();
+            InfectedKeyStore fromText = new InfectedKeyStore();
+            BufferedReader reader = new BufferedReader(new FileReader(text));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                fromText.add(line);
+            }
+            reader.close();
+            long textMillis = (System.nanoTime() - start) / 1000000;
+            long textHeap = usedHeap() - heap;
+            fromText = null;
+
+            System.out.println(keys + " keys: text file " + textMillis + " ms (" + text.length() / 1024 + " KB file, "
+                    + textHeap / 1024 + " KB heap), snapshot " + snapshotMillis + " ms (" + snapshot.length() / 1024
+                    + " KB file, " + snapshotHeap / 1024 + " KB heap)");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
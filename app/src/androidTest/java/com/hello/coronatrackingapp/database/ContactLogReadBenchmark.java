@@ -0,0 +1,164 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.hello.coronatrackingapp.asyncoperations.ContactColumns;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares reading the log of 100000 contacts the way DatabaseHandler did before,
+ * with SELECT * and a cursor over the whole table for everything, to the paged
+ * reads: COUNT(*), a lookup by id, a page from the primary key and a scan.
+ * Runs on a device with the Log database of the app (the helper of LogDatabase),
+ * which is cleared. The results are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactLogReadBenchmark {
+    private static final String TAG = "at ContactLogReadBenchmark";
+    private static final int CONTACTS = 100000;
+
+    private DatabaseHandler handler;
+    private DBHelper helper;
+
+    @Before
+    public void fillLog() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        handler = new DatabaseHandler(context);
+        handler.clearDatabase();
+        helper = LogDatabase.getHelper(context);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        SQLiteStatement insert = database.compileStatement("INSERT INTO ContactLog (timestamp, checksum) VALUES (?, ?);");
+        Random random = new Random(1);
+        byte[] checksum = new byte[32];
+        database.beginTransaction();
+        for (int i = 0; i < CONTACTS; i++) {
+            random.nextBytes(checksum);
+            insert.bindLong(1, 1600000000000L + i * 1000L);
+            insert.bindBlob(2, checksum);
+            insert.executeInsert();
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+    }
+
+    @After
+    public void clearLog() {
+        handler.clearDatabase();
+    }
+
+    @Test
+    public void count() {
+        long start = System.nanoTime();
+        SQLiteDatabase database = helper.getReadableDatabase();
+        Cursor cursor = database.rawQuery("SELECT * FROM ContactLog;", null);
+        int count = cursor.getCount();
+        cursor.close();
+        report("count, cursor", start);
+        assertEquals(CONTACTS, count);
+
+        start = System.nanoTime();
+        assertEquals(CONTACTS, handler.getCount());
+        report("count, COUNT(*)", start);
+    }
+
+    @Test
+    public void entry() {
+        long start = System.nanoTime();
+        SQLiteDatabase database = helper.getReadableDatabase();
+        Cursor cursor = database.rawQuery("SELECT * FROM ContactLog;", null);
+        cursor.moveToPosition(CONTACTS - 10);
+        long id = cursor.getLong(0);
+        String timestamp = cursor.getString(1);
+        cursor.close();
+        report("entry, position", start);
+
+        start = System.nanoTime();
+        assertEquals(timestamp, handler.getEntry(DatabaseHandler.TIMESTAMPS, id));
+        report("entry, id", start);
+    }
+
+    @Test
+    public void lastPage() {
+        long start = System.nanoTime();
+        SQLiteDatabase database = helper.getReadableDatabase();
+        Cursor cursor = database.rawQuery("SELECT _id, timestamp, checksum FROM ContactLog ORDER BY _id LIMIT "
+                + DatabaseHandler.PAGE_SIZE + " OFFSET " + (CONTACTS - DatabaseHandler.PAGE_SIZE) + ";", null);
+        long after = 0;
+        if (cursor.moveToFirst()) {
+            after = cursor.getLong(0) - 1;
+        }
+        cursor.close();
+        report("last page, offset", start);
+
+        start = System.nanoTime();
+        ContactColumns page = handler.getContactPage(after, DatabaseHandler.PAGE_SIZE);
+        report("last page, after id", start);
+        assertEquals(DatabaseHandler.PAGE_SIZE, page.size());
+    }
+
+    @Test
+    public void wholeLog() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        ArrayList<String> timestamps = column(DatabaseHandler.TIMESTAMPS);
+        ArrayList<String> checksums = column(DatabaseHandler.CHECKSUMS);
+        report("whole log, two lists", start);
+        Log.i(TAG, String.format("  %d KB", (runtime.totalMemory() - runtime.freeMemory() - used) / 1024));
+        assertEquals(CONTACTS, timestamps.size());
+        assertEquals(CONTACTS, checksums.size());
+        timestamps = null;
+        checksums = null;
+
+        runtime.gc();
+        used = runtime.totalMemory() - runtime.freeMemory();
+        final int[] scanned = new int[1];
+        start = System.nanoTime();
+        handler.scanContacts(0, new DatabaseHandler.ContactCallback() {
+            @Override
+            public boolean onContact(long id, long timestamp, byte[] checksum) {
+                scanned[0]++;
+                return true;
+            }
+        });
+        report("whole log, scan", start);
+        assertEquals(CONTACTS, scanned[0]);
+        Log.i(TAG, String.format("  %d KB", (runtime.totalMemory() - runtime.freeMemory() - used) / 1024));
+    }
+
+    /**
+     * how a column of the log was read before: a cursor over the whole table and a
+     * string for every row, the checksums in hex. The identifiers of the columns are
+     * their indexes in SELECT *.
+     */
+    private ArrayList<String> column(int column) {
+        ArrayList<String> list = new ArrayList<>();
+        Cursor cursor = helper.getReadableDatabase().rawQuery("SELECT * FROM ContactLog;", null);
+        while (cursor.moveToNext()) {
+            list.add(column == DatabaseHandler.CHECKSUMS ? DatabaseHandler.toHex(cursor.getBlob(column)) : cursor.getString(column));
+        }
+        cursor.close();
+        return list;
+    }
+
+    private static void report(String read, long start) {
+        Log.i(TAG, String.format("%-22s %8.2f ms", read, (System.nanoTime() - start) / 1e6));
+    }
+}
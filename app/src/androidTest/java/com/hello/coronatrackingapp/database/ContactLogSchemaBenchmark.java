@@ -0,0 +1,129 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.hello.coronatrackingapp.asyncoperations.ChecksumHasher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fills a ContactLog of version 1 (TEXT columns, no index) with 100000 contacts
+ * of 20 days, upgrades it to version 2 the way DBHelper does after an update
+ * and compares the size of the database file and the time of the queries the
+ * app runs on the log. Runs on a device, the results are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactLogSchemaBenchmark {
+    private static final String TAG = "at ContactLogSchemaBenchmark";
+    private static final String DATABASE = "ContactLogSchemaBenchmark";
+    private static final int CONTACTS = 100000;
+    private static final long NOW = 1600000000000L;
+    private static final long DAY = DatabaseHandler.DAY;
+
+    @Test
+    public void upgradeFromVersion1() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE);
+        DBHelper version1 = new DBHelper(context, DATABASE, null, 1, DatabaseHandler.UPGRADES[0][0]);
+        SQLiteDatabase database = version1.getWritableDatabase();
+        SQLiteStatement insert = database.compileStatement("INSERT INTO ContactLog (timestamp, checksum) VALUES (?, ?);");
+        database.beginTransaction();
+        for (int i = 0; i < CONTACTS; i++) {
+            long timestamp = timestamp(i);
+            byte[] checksum = ChecksumHasher.get().checksum(timestamp, "benchmark");
+            insert.bindString(1, Long.toString(timestamp));
+            // the halves as Peripheral logged them
+            insert.bindString(2, new String(checksum, 0, 16, StandardCharsets.UTF_8)
+                    + new String(checksum, 16, 16, StandardCharsets.UTF_8));
+            insert.executeInsert();
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+        report("version 1", context, database, false);
+        database.close();
+
+        DBHelper version2 = new DBHelper(context, DATABASE, null, DatabaseHandler.VERSION,
+                DatabaseHandler.CREATE, DatabaseHandler.UPGRADES);
+        long start = System.nanoTime();
+        database = version2.getWritableDatabase();
+        Log.i(TAG, String.format("upgrade %8.1f ms", (System.nanoTime() - start) / 1e6));
+        assertEquals(CONTACTS, DatabaseUtils.queryNumEntries(database, "ContactLog"));
+        assertEquals("integer", DatabaseUtils.stringForQuery(database, "SELECT typeof(timestamp) FROM ContactLog LIMIT 1;", null));
+        assertEquals("blob", DatabaseUtils.stringForQuery(database, "SELECT typeof(checksum) FROM ContactLog LIMIT 1;", null));
+        report("version 2, upgraded", context, database, true);
+
+        // once the upgraded contacts expired, all checksums are 32 bytes
+        database.delete("ContactLog", null, null);
+        insert = database.compileStatement("INSERT INTO ContactLog (timestamp, checksum) VALUES (?, ?);");
+        database.beginTransaction();
+        for (int i = 0; i < CONTACTS; i++) {
+            long timestamp = timestamp(i);
+            insert.bindLong(1, timestamp);
+            insert.bindBlob(2, ChecksumHasher.get().checksum(timestamp, "benchmark"));
+            insert.executeInsert();
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+        report("version 2", context, database, true);
+        database.close();
+        context.deleteDatabase(DATABASE);
+    }
+
+    private static long timestamp(int i) {
+        return NOW - 20 * DAY + i * (20 * DAY / CONTACTS);
+    }
+
+    /**
+     * logs the size of the file and the best of 5 runs of the contacts of the last
+     * day, of counting the ones older than 14 days, of the contacts of one millisecond
+     * and of reading the whole log.
+     * @param typed true if the timestamps are numbers, not strings
+     */
+    private void report(String schema, Context context, SQLiteDatabase database, boolean typed) {
+        database.execSQL("VACUUM;");
+        Log.i(TAG, String.format("%-20s %8d KB", schema, context.getDatabasePath(DATABASE).length() / 1024));
+        String lastDay = Long.toString(NOW - DAY);
+        String expired = Long.toString(NOW - 14 * DAY);
+        String millisecond = Long.toString(timestamp(CONTACTS / 2));
+        if (!typed) {
+            // the TEXT timestamps compare as strings, they all have the same number of digits
+            lastDay = "'" + lastDay + "'";
+            expired = "'" + expired + "'";
+            millisecond = "'" + millisecond + "'";
+        }
+        query(database, "  last day", "SELECT _id, timestamp, checksum FROM ContactLog WHERE timestamp >= " + lastDay + ";");
+        query(database, "  older than 14 days", "SELECT COUNT(*) FROM ContactLog WHERE timestamp < " + expired + ";");
+        query(database, "  one millisecond", "SELECT _id, checksum FROM ContactLog WHERE timestamp = " + millisecond + ";");
+        query(database, "  whole log", "SELECT _id, timestamp, checksum FROM ContactLog ORDER BY _id;");
+    }
+
+    private void query(SQLiteDatabase database, String name, String query) {
+        long best = Long.MAX_VALUE;
+        int rows = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            Cursor cursor = database.rawQuery(query, null);
+            rows = 0;
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                rows++;
+            }
+            cursor.close();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        Log.i(TAG, String.format("%-22s %8.2f ms, %d rows", name, best / 1e6, rows));
+    }
+}
@@ -0,0 +1,124 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Purges a log of 1000000 contacts of 20 days, 30% of them older than 14 days and
+ * some logged out of order, with {@link ContactRetention} and with the loop
+ * deleteOldEntries() had before: a cursor over the whole table and one delete per
+ * row. The loop takes far too long for all of them, it is stopped after LOOP_ROWS
+ * and the rest is estimated. Runs on a device, the results are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactRetentionBenchmark {
+    private static final String TAG = "at ContactRetentionBenchmark";
+    private static final String DATABASE = "ContactRetentionBenchmark";
+    private static final int CONTACTS = 1000000;
+    private static final int LOOP_ROWS = 2000;
+    private static final long NOW = 1600000000000L;
+    private static final long DAY = DatabaseHandler.DAY;
+
+    @Test
+    public void deletePerRow() {
+        SQLiteDatabase database = fill(false);
+        long expired = NOW - ContactRetention.WINDOW;
+        long obsolete = DatabaseUtils.longForQuery(database,
+                "SELECT COUNT(*) FROM ContactLog WHERE timestamp < " + expired + ";", null);
+        long start = System.nanoTime();
+        Cursor cursor = database.rawQuery("SELECT * FROM ContactLog;", null);
+        cursor.moveToFirst();
+        int deleted = 0;
+        while (deleted < LOOP_ROWS && cursor.getLong(1) < expired) {
+            database.delete("ContactLog", "timestamp=" + cursor.getString(1), null);
+            cursor.moveToNext();
+            deleted++;
+        }
+        cursor.close();
+        long elapsed = System.nanoTime() - start;
+        Log.i(TAG, String.format("delete per row       %8.3f ms per row, about %.0f s for %d rows",
+                elapsed / 1e6 / deleted, elapsed / 1e9 / deleted * obsolete, obsolete));
+        close(database);
+    }
+
+    @Test
+    public void rangeDelete() {
+        purge(false);
+    }
+
+    @Test
+    public void rangeDeleteAndIncrementalVacuum() {
+        purge(true);
+    }
+
+    private void purge(boolean vacuum) {
+        SQLiteDatabase database = fill(vacuum);
+        long size = file().length();
+        long start = System.nanoTime();
+        int deleted = new ContactRetention(ContactRetention.WINDOW, vacuum).purge(database, NOW);
+        long elapsed = System.nanoTime() - start;
+        assertEquals(0, DatabaseUtils.longForQuery(database,
+                "SELECT COUNT(*) FROM ContactLog WHERE timestamp < " + (NOW - ContactRetention.WINDOW) + ";", null));
+        Log.i(TAG, String.format("range delete%-9s %8.0f ms for %d rows, %d KB -> %d KB",
+                vacuum ? ", vacuum" : "", elapsed / 1e6, deleted, size / 1024, file().length() / 1024));
+        close(database);
+    }
+
+    /**
+     * @param incremental true to create the database with incremental vacuum turned on
+     */
+    private SQLiteDatabase fill(boolean incremental) {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE);
+        file().getParentFile().mkdirs();
+        SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file(), null);
+        if (incremental) {
+            database.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+        }
+        for (String createString : DatabaseHandler.CREATE) {
+            database.execSQL(createString);
+        }
+        Random random = new Random(1);
+        byte[] checksum = new byte[32];
+        SQLiteStatement insert = database.compileStatement("INSERT INTO ContactLog (timestamp, checksum) VALUES (?, ?);");
+        database.beginTransaction();
+        for (int i = 0; i < CONTACTS; i++) {
+            long timestamp = NOW - 20 * DAY + i * (20 * DAY / CONTACTS);
+            if (i % 50 == 0) {
+                // logged a few hours late or early
+                timestamp += (random.nextInt(13) - 6) * 60 * 60 * 1000L;
+            }
+            random.nextBytes(checksum);
+            insert.bindLong(1, timestamp);
+            insert.bindBlob(2, checksum);
+            insert.executeInsert();
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+        return database;
+    }
+
+    private File file() {
+        return InstrumentationRegistry.getTargetContext().getDatabasePath(DATABASE);
+    }
+
+    private void close(SQLiteDatabase database) {
+        database.close();
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE);
+    }
+}
@@ -0,0 +1,94 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.hello.coronatrackingapp.asyncoperations.ChecksumHasher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares logging contacts with {@link ContactWriter} to opening the database,
+ * inserting one row and closing it again for every contact, as logContact() did
+ * before. Reports the rows written per second and how long the GATT callback is
+ * held up (99th percentile). Runs on a device, the results are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactWriterBenchmark {
+    private static final String TAG = "at ContactWriterBenchmark";
+    private static final String DATABASE = "ContactWriterBenchmark";
+    private static final int CONTACTS = 2000;
+
+    private DBHelper helper;
+
+    @Before
+    public void createDatabase() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE);
+        helper = new DBHelper(context, DATABASE, null, DatabaseHandler.VERSION, DatabaseHandler.CREATE);
+    }
+
+    @Test
+    public void insertPerContact() {
+        long[] latencies = new long[CONTACTS];
+        long start = System.nanoTime();
+        for (int i = 0; i < CONTACTS; i++) {
+            byte[] checksum = checksum(i);
+            long call = System.nanoTime();
+            SQLiteDatabase database = helper.getWritableDatabase();
+            ContentValues values = new ContentValues();
+            values.put("timestamp", timestamp(i));
+            values.put("checksum", checksum);
+            database.insert("ContactLog", "", values);
+            database.close();
+            latencies[i] = System.nanoTime() - call;
+        }
+        report("insert per contact", start, latencies);
+    }
+
+    @Test
+    public void contactWriter() {
+        ContactWriter writer = new ContactWriter(helper);
+        long[] latencies = new long[CONTACTS];
+        long start = System.nanoTime();
+        for (int i = 0; i < CONTACTS; i++) {
+            byte[] checksum = checksum(i);
+            long call = System.nanoTime();
+            writer.add(timestamp(i), checksum);
+            latencies[i] = System.nanoTime() - call;
+        }
+        // all rows written
+        writer.close();
+        report("contact writer", start, latencies);
+    }
+
+    private void report(String path, long start, long[] latencies) {
+        long elapsed = System.nanoTime() - start;
+        SQLiteDatabase database = helper.getReadableDatabase();
+        assertEquals(CONTACTS, DatabaseUtils.queryNumEntries(database, "ContactLog"));
+        database.close();
+        Arrays.sort(latencies);
+        Log.i(TAG, String.format("%-20s %8.0f rows/s, p99 callback %8.3f ms", path,
+                CONTACTS / (elapsed / 1e9), latencies[CONTACTS * 99 / 100] / 1e6));
+    }
+
+    private static long timestamp(int i) {
+        return 1590000000000L + i * 1000L;
+    }
+
+    private static byte[] checksum(int i) {
+        return ChecksumHasher.get().checksum(timestamp(i), "benchmark");
+    }
+}
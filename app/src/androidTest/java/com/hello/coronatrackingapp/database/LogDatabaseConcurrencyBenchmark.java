@@ -0,0 +1,199 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes batches of contacts the way ContactWriter does while READERS threads
+ * count the log and read pages of it, for DURATION milliseconds, on a log of
+ * 50000 contacts. Once with the rollback journal and the default pragmas, where
+ * the one connection of the helper is shared by the writer and the readers, and
+ * once configured like LogDatabase, with write-ahead logging. Reports the batches
+ * and reads per second and their latencies (median and 99th percentile). Runs on
+ * a device, the results are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LogDatabaseConcurrencyBenchmark {
+    private static final String TAG = "at LogDatabaseConcurrencyBenchmark";
+    private static final String DATABASE = "LogDatabaseConcurrencyBenchmark";
+    private static final int CONTACTS = 50000;
+    private static final int READERS = 3;
+    private static final long DURATION = 10000;
+    // milliseconds between the batches, like contacts coming in from the Peripheral
+    private static final long WRITE_INTERVAL = 5;
+    private static final long NOW = 1600000000000L;
+
+    @Test
+    public void rollbackJournal() throws Exception {
+        DBHelper helper = createHelper();
+        run("rollback journal", helper);
+    }
+
+    @Test
+    public void writeAheadLogging() throws Exception {
+        DBHelper helper = createHelper();
+        helper.setWriteAheadLoggingEnabled(true);
+        helper.setSynchronous(LogDatabase.SYNCHRONOUS);
+        helper.setCacheSize(LogDatabase.CACHE_SIZE);
+        run("write-ahead logging", helper);
+    }
+
+    private DBHelper createHelper() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE);
+        return new DBHelper(context, DATABASE, null, DatabaseHandler.VERSION, DatabaseHandler.CREATE);
+    }
+
+    private void run(String mode, final DBHelper helper) throws Exception {
+        final SQLiteDatabase database = helper.getWritableDatabase();
+        fill(database);
+        final long stop = System.nanoTime() + DURATION * 1000000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[][] writes = new long[1][];
+        final long[][] reads = new long[READERS][];
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ContactWriter.DatabaseStore store = new ContactWriter.DatabaseStore(helper);
+                ContactWriter.Batch batch = new ContactWriter.Batch();
+                Random random = new Random(0);
+                Latencies latencies = new Latencies();
+                int logged = CONTACTS;
+                await(start);
+                while (System.nanoTime() < stop) {
+                    batch.clear();
+                    for (int i = 0; i < ContactWriter.BATCH_SIZE; i++) {
+                        byte[] checksum = new byte[32];
+                        random.nextBytes(checksum);
+                        batch.add(NOW + logged++ * 1000L, checksum);
+                    }
+                    long call = System.nanoTime();
+                    store.write(batch);
+                    latencies.add(System.nanoTime() - call);
+                    try {
+                        Thread.sleep(WRITE_INTERVAL);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                writes[0] = latencies.get();
+            }
+        });
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            final int reader = r;
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(reader + 1);
+                    Latencies latencies = new Latencies();
+                    await(start);
+                    while (System.nanoTime() < stop) {
+                        long call = System.nanoTime();
+                        if (random.nextBoolean()) {
+                            DatabaseUtils.queryNumEntries(database, "ContactLog");
+                        } else {
+                            Cursor rows = database.rawQuery("SELECT _id, timestamp, checksum FROM ContactLog "
+                                            + "WHERE _id > ? ORDER BY _id LIMIT " + DatabaseHandler.PAGE_SIZE + ";",
+                                    new String[]{Integer.toString(random.nextInt(CONTACTS))});
+                            while (rows.moveToNext()) {
+                                rows.getBlob(2);
+                            }
+                            rows.close();
+                        }
+                        latencies.add(System.nanoTime() - call);
+                    }
+                    reads[reader] = latencies.get();
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        start.countDown();
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(DatabaseUtils.queryNumEntries(database, "ContactLog") > CONTACTS);
+        helper.close();
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE);
+
+        long[] all = new long[0];
+        for (long[] latencies : reads) {
+            int length = all.length;
+            all = Arrays.copyOf(all, length + latencies.length);
+            System.arraycopy(latencies, 0, all, length, latencies.length);
+        }
+        Log.i(TAG, mode);
+        report("  batches", writes[0]);
+        report("  reads", all);
+    }
+
+    private static void fill(SQLiteDatabase database) {
+        Random random = new Random(1);
+        byte[] checksum = new byte[32];
+        SQLiteStatement insert = database.compileStatement("INSERT INTO ContactLog (timestamp, checksum) VALUES (?, ?);");
+        database.beginTransaction();
+        for (int i = 0; i < CONTACTS; i++) {
+            random.nextBytes(checksum);
+            insert.bindLong(1, NOW + i * 1000L);
+            insert.bindBlob(2, checksum);
+            insert.executeInsert();
+        }
+        database.setTransactionSuccessful();
+        database.endTransaction();
+    }
+
+    private static void await(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void report(String what, long[] latencies) {
+        Arrays.sort(latencies);
+        Log.i(TAG, String.format("%-10s %7.0f per s, median %6.2f ms, 99th percentile %6.2f ms",
+                what, latencies.length * 1000.0 / DURATION,
+                latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6));
+    }
+
+    /**
+     * nanoseconds of the calls of one thread.
+     */
+    private static class Latencies {
+        private long[] latencies = new long[1024];
+        private int size;
+
+        void add(long latency) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+        }
+
+        long[] get() {
+            return Arrays.copyOf(latencies, size);
+        }
+    }
+}
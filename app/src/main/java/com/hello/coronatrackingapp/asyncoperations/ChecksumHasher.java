@@ -0,0 +1,315 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates the checksums of contacts (SHA-256 of timestamp + ID) without
+ * creating objects for every checksum: the digest and all buffers are created
+ * once per thread, the timestamp is written into a buffer digit by digit and
+ * the bytes of an ID are only encoded again when the ID changes. Get the one
+ * of the current thread with get(), an instance must not be shared between threads.
+ */
+public final class ChecksumHasher {
+    // bytes of a SHA-256 checksum
+    public static final int LENGTH = 32;
+    private static final byte[] REPLACEMENT = {(byte) 0xEF, (byte) 0xBF, (byte) 0xBD};
+
+    private static final ThreadLocal<ChecksumHasher> HASHERS = new ThreadLocal<ChecksumHasher>() {
+        @Override
+        protected ChecksumHasher initialValue() {
+            return new ChecksumHasher();
+        }
+    };
+
+    private final MessageDigest messageDigest;
+    // digits of the timestamp, a long has up to 19 of them and a sign
+    private final byte[] digits = new byte[20];
+    private final byte[] checksum = new byte[LENGTH];
+    // the checksum as it was logged: decoded as a string and encoded again, up to 3 bytes per byte
+    private final byte[] legacy = new byte[LENGTH * REPLACEMENT.length];
+    private int legacyLength;
+
+    private String id;
+    private byte[] idBytes;
+
+    /**
+     * @return the hasher of the current thread
+     */
+    public static ChecksumHasher get() {
+        return HASHERS.get();
+    }
+
+    private ChecksumHasher() {
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param timestamp milliseconds of the contact
+     * @param id ID of the user
+     * @return a new array with the checksum, for sending it to another device
+     */
+    public byte[] checksum(long timestamp, String id) {
+        hash(timestamp, id);
+        return checksum.clone();
+    }
+
+    /**
+     * calculates the checksum of a contact, which can then be compared with matches()
+     * or matchesLogged().
+     *
+     * @param timestamp milliseconds of the contact
+     * @param id ID of the user
+     */
+    public void hash(long timestamp, String id) {
+        int start = digits.length;
+        long rest = timestamp;
+        do {
+            digits[--start] = (byte) ('0' + Math.abs(rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+        if (timestamp < 0) {
+            digits[--start] = '-';
+        }
+        finish(start, id);
+    }
+
+    /**
+     * calculates the checksum of a contact with the timestamp as it was logged.
+     *
+     * @param timestamp timestamp of the contact as logged, usually the digits of the milliseconds
+     * @param id ID of the user
+     */
+    public void hash(CharSequence timestamp, String id) {
+        int length = timestamp.length();
+        if (length > digits.length) {
+            // not a timestamp the app logs, but it must be hashed the same way
+            messageDigest.update(timestamp.toString().getBytes());
+            finish(digits.length, id);
+            return;
+        }
+        int start = digits.length - length;
+        for (int i = 0; i < length; i++) {
+            char c = timestamp.charAt(i);
+            if (c >= 0x80) {
+                messageDigest.update(timestamp.toString().getBytes());
+                finish(digits.length, id);
+                return;
+            }
+            digits[start + i] = (byte) c;
+        }
+        finish(start, id);
+    }
+
+    private void finish(int start, String id) {
+        if (id != this.id) {
+            this.id = id;
+            idBytes = id.getBytes();
+        }
+        messageDigest.update(digits, start, digits.length - start);
+        messageDigest.update(idBytes);
+        try {
+            messageDigest.digest(checksum, 0, LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        legacyLength = -1;
+    }
+
+    /**
+     * @param expected a checksum as another device sent it
+     * @return true if it is the one calculated last
+     */
+    public boolean matches(byte[] expected) {
+        return MessageDigest.isEqual(checksum, expected);
+    }
+
+    /**
+     * compares with a checksum as another device sent it, stopping at the first byte
+     * that differs. For comparing with many checksums of which hardly any match.
+     *
+     * @param checksums array holding the checksum
+     * @param offset where its LENGTH bytes start
+     * @return true if it is the one calculated last
+     */
+    public boolean matches(byte[] checksums, int offset) {
+        for (int i = 0; i < LENGTH; i++) {
+            if (checksums[offset + i] != checksum[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * compares with a checksum from the contact log, which stores checksums as
+     * strings, so bytes that aren't valid UTF-8 were replaced when logging them.
+     *
+     * @param logged the bytes of the logged checksum string
+     * @return true if it is the one calculated last
+     */
+    public boolean matchesLogged(byte[] logged) {
+        normalize();
+        if (logged.length != legacyLength) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < legacyLength; i++) {
+            difference |= logged[i] ^ legacy[i];
+        }
+        return difference == 0;
+    }
+
+    /**
+     * @return the checksum calculated last, how it looks in the contact log. Only valid
+     * until the next checksum is calculated, the array is reused.
+     */
+    public byte[] logged() {
+        normalize();
+        return legacy;
+    }
+
+    /**
+     * @return the number of bytes of logged() that belong to the checksum
+     */
+    public int loggedLength() {
+        normalize();
+        return legacyLength;
+    }
+
+    /**
+     * does what new String(checksum).getBytes() does with UTF-8, without the string:
+     * valid sequences stay, invalid ones are replaced with U+FFFD the way the platform
+     * decoder does it.
+     */
+    private void normalize() {
+        if (legacyLength >= 0) {
+            return;
+        }
+        int out = 0;
+        int i = 0;
+        while (i < LENGTH) {
+            int valid = sequence(i);
+            if (valid > 0) {
+                System.arraycopy(checksum, i, legacy, out, valid);
+                out += valid;
+                i += valid;
+            } else {
+                System.arraycopy(REPLACEMENT, 0, legacy, out, REPLACEMENT.length);
+                out += REPLACEMENT.length;
+                i -= valid;
+            }
+        }
+        legacyLength = out;
+    }
+
+    /**
+     * compares with a logged checksum like matchesLogged(), but stops at the first
+     * byte that differs instead of taking the same time for every checksum, and
+     * doesn't convert the whole checksum first. For comparing with many logged
+     * checksums of which hardly any match.
+     *
+     * @param logged array holding the bytes of the logged checksum string
+     * @param offset where they start
+     * @param length how many there are
+     * @return true if it is the checksum calculated last
+     */
+    public boolean matchesLogged(byte[] logged, int offset, int length) {
+        return compareLogged(logged, offset, length, length);
+    }
+
+    /**
+     * compares with a logged checksum of which only the first LENGTH bytes were kept,
+     * along with the number of bytes it had (see ContactColumns). Stops at the first
+     * byte that differs like matchesLogged(byte[], int, int).
+     *
+     * @param prefixes array holding the first bytes of the logged checksum string
+     * @param offset where they start
+     * @param length how many bytes the logged checksum string had
+     * @return true if it is the checksum calculated last
+     */
+    public boolean matchesLoggedPrefix(byte[] prefixes, int offset, int length) {
+        return compareLogged(prefixes, offset, Math.min(length, LENGTH), length);
+    }
+
+    /**
+     * @param compared how many of the logged bytes are there to compare
+     * @param length how many bytes the logged checksum string had
+     */
+    private boolean compareLogged(byte[] logged, int offset, int compared, int length) {
+        if (legacyLength >= 0) {
+            if (length != legacyLength) {
+                return false;
+            }
+            for (int i = 0; i < compared; i++) {
+                if (logged[offset + i] != legacy[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int out = 0;
+        int i = 0;
+        while (i < LENGTH) {
+            int valid = sequence(i);
+            byte[] bytes = valid > 0 ? checksum : REPLACEMENT;
+            int from = valid > 0 ? i : 0;
+            int count = valid > 0 ? valid : REPLACEMENT.length;
+            if (out + count > length) {
+                return false;
+            }
+            for (int j = 0; j < count && out + j < compared; j++) {
+                if (logged[offset + out + j] != bytes[from + j]) {
+                    return false;
+                }
+            }
+            out += count;
+            i += Math.abs(valid);
+        }
+        return out == length;
+    }
+
+    /**
+     * @return the length of the valid UTF-8 sequence at index i of the checksum, or
+     * minus the number of bytes replaced with one U+FFFD if it isn't valid
+     */
+    private int sequence(int i) {
+        int b = checksum[i] & 0xFF;
+        if (b < 0x80) {
+            return 1;
+        } else if (b >= 0xC2 && b <= 0xDF) {
+            return continuation(i + 1, 0x80, 0xBF) ? 2 : -1;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            if (!continuation(i + 1, b == 0xE0 ? 0xA0 : 0x80, 0xBF)) {
+                return -1;
+            } else if (!continuation(i + 2, 0x80, 0xBF)) {
+                return -2;
+            }
+            // an encoded surrogate is replaced as a whole, like the platform decoder does
+            return b == 0xED && (checksum[i + 1] & 0xFF) >= 0xA0 ? -3 : 3;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            int low = b == 0xF0 ? 0x90 : 0x80;
+            int high = b == 0xF4 ? 0x8F : 0xBF;
+            if (!continuation(i + 1, low, high)) {
+                return -1;
+            } else if (!continuation(i + 2, 0x80, 0xBF)) {
+                return -2;
+            }
+            return continuation(i + 3, 0x80, 0xBF) ? 4 : -3;
+        }
+        return -1;
+    }
+
+    private boolean continuation(int index, int low, int high) {
+        if (index >= LENGTH) {
+            return false;
+        }
+        int b = checksum[index] & 0xFF;
+        return b >= low && b <= high;
+    }
+}
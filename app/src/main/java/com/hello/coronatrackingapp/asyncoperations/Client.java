@@ -2,30 +2,71 @@ package com.hello.coronatrackingapp.asyncoperations;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This class represents one connection to the main server, which is needed
  * to report ones own infection and to download keys of infected people. It provides
- * the methods that are needed for that.
+ * the methods that are needed for that. If the server speaks version 2 of the protocol,
+ * keys are exchanged as binary frames (see {@link FrameCodec}), otherwise as lines.
+ * The connection stays open for further requests until close() is called. See
+ * {@link ClientPool} for keeping connections between the tasks of the app.
  */
 public class Client {
     private static final String TAG = "at Client";
+    // default milliseconds to wait for a connection to be established
+    public static final int CONNECT_TIMEOUT = 10 * 1000;
+    // default milliseconds to wait for the server to send something, for example to confirm a report
+    public static final int READ_TIMEOUT = 10 * 1000;
+    // milliseconds to wait for the server to answer "version 2", older servers never do
+    private static final int VERSION_TIMEOUT = 2 * 1000;
+    // milliseconds a server that didn't answer "version 2" in time, or dropped the connection
+    // before answering, isn't asked again. It may only have been slow, for example on a
+    // cellular link, or restarting
+    private static final long TEXT_ONLY_RETRY = 10 * 60 * 1000;
+    // length of a key (UUID) as text
+    private static final int KEY_LENGTH = 36;
+    // encoding of the keys asked for in version 2, see FrameCodec. SORTED takes the fewest bytes.
+    private static final byte KEY_ENCODING = FrameCodec.SORTED;
+
+    // servers ("address:port") that didn't answer "version 2", mapped to the System.nanoTime()
+    // until which they aren't asked again. Long.MAX_VALUE if one answered something else.
+    private static final Map<String, Long> textOnlyServers = new HashMap<>();
     private final String ipAddress;
 
     private final int port;
+    private final int connectTimeout;
+    private final int readTimeout;
     private Socket socket;
 
     private InputStream inputStream;
     private OutputStream outputStream;
     private BufferedReader bufferedReader;
 
+    // true if the server speaks version 2, dataInputStream is used instead of bufferedReader then
+    private boolean frames;
+    private DataInputStream dataInputStream;
+    // requests of both versions are written here and sent with flush()
+    private DataOutputStream dataOutputStream;
+
+    // set if the connection can't be used for further requests, for example after a timeout
+    private boolean broken;
+
     /**
      * prepares connection with setting the server to connect to and its port.
      *
@@ -33,41 +74,178 @@ public class Client {
      * @param port port the server is bound to
      */
     public Client(String ipAddress, int port) {
+        this(ipAddress, port, CONNECT_TIMEOUT, READ_TIMEOUT);
+    }
+
+    /**
+     * @param ipAddress name of the server, the client connects to (IP address)
+     * @param port port the server is bound to
+     * @param connectTimeout milliseconds to wait for the connection to be established
+     * @param readTimeout milliseconds to wait for the server to send something
+     */
+    public Client(String ipAddress, int port, int connectTimeout, int readTimeout) {
         this.ipAddress = ipAddress;
         this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
     }
 
     /**
      * connects client to server and sets up the necessary streams
-     *
-     * @return true, if connecting was successful, false otherwise
+     * (see isConnected() to find out if that worked).
      */
     public void connect() {
         try {
-            // establish connection to server, represented in a socket object
-            this.socket = new Socket(ipAddress, port);
-            // object, representing the stream to the server
-            this.outputStream = socket.getOutputStream();
-            // object, representing the stream from the server to this client
-            this.inputStream = socket.getInputStream();
-            this.bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-            Log.i(TAG, "connected to main server.");
+            open();
+            frames = negotiate();
+            if (frames) {
+                this.dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+            } else {
+                this.bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            }
+            this.dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+            socket.setSoTimeout(readTimeout);
+            Log.i(TAG, "connected to main server, protocol version " + (frames ? 2 : 1) + ".");
         } catch (IOException e) {
             Log.i(TAG, "connection to main server failed.");
             e.printStackTrace();
+            broken = true;
         }
     }
 
     /**
-     * sends users ID to the server
+     * @return true if connect() succeeded and the connection wasn't closed since.
+     */
+    public boolean isConnected() {
+        return socket != null && socket.isConnected() && !socket.isClosed() && !broken;
+    }
+
+    private void open() throws IOException {
+        broken = false;
+        // establish connection to server, represented in a socket object
+        this.socket = new Socket();
+        socket.connect(new InetSocketAddress(ipAddress, port), connectTimeout);
+        // lets the system notice if a kept connection died while it wasn't used
+        socket.setKeepAlive(true);
+        socket.setTcpNoDelay(true);
+        // object, representing the stream to the server
+        this.outputStream = socket.getOutputStream();
+        // object, representing the stream from the server to this client
+        this.inputStream = socket.getInputStream();
+    }
+
+    /**
+     * asks the server to switch to version 2 of the protocol. A server that doesn't know
+     * it ignores the line, so after waiting a while, a new connection for the text protocol is opened.
+     *
+     * @return true if the server switched to frames.
+     */
+    private boolean negotiate() throws IOException {
+        String server = ipAddress + ":" + port;
+        if (isTextOnly(server)) {
+            return false;
+        }
+        outputStream.write((FrameCodec.VERSION_LINE + "\n").getBytes());
+        socket.setSoTimeout(VERSION_TIMEOUT);
+        try {
+            // read unbuffered, nothing after the line may be consumed yet
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = inputStream.read()) != '\n') {
+                if (b < 0) {
+                    throw new EOFException("main server closed the connection");
+                }
+                line.write(b);
+            }
+            if (line.toString().equals(FrameCodec.VERSION_LINE)) {
+                return true;
+            }
+            // the server answered, but not with version 2: that won't change
+            Log.i(TAG, "main server doesn't speak protocol version 2.");
+            setTextOnly(server, Long.MAX_VALUE);
+        } catch (IOException e) {
+            // a timeout or a dropped connection says nothing about the protocol, ask again later
+            Log.i(TAG, "main server didn't answer protocol version 2. " + e);
+            setTextOnly(server, System.nanoTime() + TEXT_ONLY_RETRY * 1000000);
+        }
+        close();
+        open();
+        return false;
+    }
+
+    private static boolean isTextOnly(String server) {
+        synchronized (textOnlyServers) {
+            Long until = textOnlyServers.get(server);
+            if (until == null) {
+                return false;
+            }
+            if (until != Long.MAX_VALUE && System.nanoTime() - until >= 0) {
+                textOnlyServers.remove(server);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static void setTextOnly(String server, long until) {
+        synchronized (textOnlyServers) {
+            textOnlyServers.put(server, until);
+        }
+    }
+
+    /**
+     * sends users ID to the server and waits until the server confirms
+     * it stored the ID for good ("ok").
      *
      * @param message  data to send
-     * @throws IOException
+     * @return true if the server confirmed the report, false if it refused it
+     * (for example the password was wrong) or there was nothing to send.
+     * @throws IOException if the server didn't answer, the report may or may not be
+     * stored then and can be sent again. The connection can't be used any more.
      */
-    public void sendData(String message) throws IOException {
+    public boolean sendData(String message) throws IOException {
         Log.i(TAG, "sending infection status with password to main server.");
-        outputStream.write(message.getBytes());
-        closeConnection();
+        try {
+            if (!writeReport(message)) {
+                return false;
+            }
+            dataOutputStream.flush();
+            return readReportAnswer();
+        } catch (IOException e) {
+            Log.i(TAG, "main server didn't confirm the report.");
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * @return false if there is nothing to send.
+     */
+    private boolean writeReport(String message) throws IOException {
+        if (!frames) {
+            dataOutputStream.write(message.getBytes());
+            return true;
+        }
+        // the message is the password followed by the key
+        String report = message.trim();
+        if (report.length() < KEY_LENGTH) {
+            Log.i(TAG, "nothing to report.");
+            return false;
+        }
+        int keyStart = report.length() - KEY_LENGTH;
+        try {
+            FrameCodec.writeReport(dataOutputStream, report.substring(keyStart), report.substring(0, keyStart));
+        } catch (IllegalArgumentException e) {
+            Log.i(TAG, "ID is not a valid key.");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean readReportAnswer() throws IOException {
+        boolean ok = frames ? FrameCodec.readAck(dataInputStream) : readLine().equals("ok");
+        Log.i(TAG, "main server answered: " + (ok ? "ok" : "failed"));
+        return ok;
     }
 
     /**
@@ -78,31 +256,125 @@ public class Client {
     public ArrayList<String> requestList() throws IOException{
         Log.i(TAG, "requesting infected keys from main server.");
 
-        outputStream.write("requestlist\n".getBytes());
+        if (frames) {
+            FrameCodec.writeList(dataOutputStream, 0, KEY_ENCODING);
+            dataOutputStream.flush();
+            return FrameCodec.readKeys(dataInputStream).getKeys();
+        }
+
+        dataOutputStream.write("requestlist\n".getBytes());
+        dataOutputStream.flush();
         ArrayList<String> list = new ArrayList<>();
 
         String line = null;
         int i = 0;
-        while (!(line = bufferedReader.readLine()).equals("done")) {
+        while (!(line = readLine()).equals("done")) {
             Log.i("key " + i + ": ", line);
             list.add(line);
             i++;
         }
-        closeConnection();
 
         return list;
     }
 
     /**
-     * close all streams and socket
+     * sends the String "requestlist since " followed by a cursor to the server, which
+     * returns only the keys added after the key with that sequence number. Every key is
+     * passed on to a consumer as soon as it is decoded. With the text protocol, the keys
+     * are collected first, since the new cursor only comes at the end.
      *
+     * @param cursor sequence number of the last key downloaded so far, 0 if there is none.
+     * @param consumer receives the new keys.
+     * @return the new cursor.
      * @throws IOException
      */
-    private void closeConnection() throws IOException {
+    public long requestListSince(long cursor, KeyConsumer consumer) throws IOException {
+        writeListRequest(cursor);
+        dataOutputStream.flush();
+        return readList(consumer);
+    }
+
+    private void writeListRequest(long cursor) throws IOException {
+        Log.i(TAG, "requesting infected keys added since " + cursor + " from main server.");
+        if (frames) {
+            FrameCodec.writeList(dataOutputStream, cursor, KEY_ENCODING);
+        } else {
+            dataOutputStream.write(("requestlist since " + cursor + "\n").getBytes());
+        }
+    }
+
+    private long readList(KeyConsumer consumer) throws IOException {
+        if (frames) {
+            long newCursor = FrameCodec.readKeys(dataInputStream, consumer);
+            Log.i(TAG, "cursor now at " + newCursor);
+            return newCursor;
+        }
+
+        KeyCollector collector = new KeyCollector();
+        String line = null;
+        while (!(line = readLine()).startsWith("done ")) {
+            // the server didn't know the cursor and sends all of its keys
+            if (line.equals("reset")) {
+                collector.reset = true;
+            } else {
+                collector.keys.add(line);
+            }
+        }
+
+        long newCursor = Long.parseLong(line.substring("done ".length()));
+        Log.i(TAG, collector.keys.size() + " new keys, cursor now at " + newCursor);
+        consumer.begin(collector.reset, newCursor, collector.keys.size());
+        for (String key : collector.keys) {
+            consumer.accept(key);
+        }
+        return newCursor;
+    }
+
+    /**
+     * reads a line of the text protocol.
+     *
+     * @throws EOFException if the server closed the connection.
+     */
+    private String readLine() throws IOException {
+        String line = bufferedReader.readLine();
+        if (line == null) {
+            throw new EOFException("main server closed the connection");
+        }
+        return line;
+    }
+
+    /**
+     * collects the keys of a download.
+     */
+    private static class KeyCollector implements KeyConsumer {
+        boolean reset;
+        final ArrayList<String> keys = new ArrayList<>();
+
+        @Override
+        public void begin(boolean reset, long cursor, int count) {
+            this.reset = reset;
+            keys.ensureCapacity(count);
+        }
+
+        @Override
+        public void accept(String key) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * close all streams and socket
+     */
+    public void close() {
         Log.i(TAG, "closing connection to main server.");
-        outputStream.close();
-        bufferedReader.close();
-        inputStream.close();
-        socket.close();
+        broken = true;
+        try {
+            if (socket != null) {
+                // closes both streams as well
+                socket.close();
+            }
+        } catch (IOException e) {
+            Log.i(TAG, "closing connection to main server failed.");
+        }
     }
 }
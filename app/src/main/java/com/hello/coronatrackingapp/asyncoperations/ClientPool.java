@@ -0,0 +1,190 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps connections to the main server open between the tasks of the app, so
+ * periodic downloads and reports don't need a new TCP handshake (and protocol
+ * negotiation) every time. A connection that isn't used for keepAlive milliseconds
+ * is closed. If a kept connection turns out to be dead when it is used again (the
+ * server or the mobile network dropped it in the meantime), the task is repeated
+ * once on a new connection, which is fine since downloads and reports can be repeated.
+ */
+public class ClientPool {
+    private static final String TAG = "at ClientPool";
+    // default milliseconds an unused connection is kept open
+    public static final long KEEP_ALIVE = 2 * 60 * 1000;
+    // default number of unused connections kept open
+    public static final int MAX_IDLE = 2;
+
+    /**
+     * Work done with a connection of the pool.
+     */
+    public interface Task<T> {
+        T run(Client client) throws IOException;
+    }
+
+    private final String ipAddress;
+    private final int port;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxIdle;
+    private final long keepAlive;
+
+    // unused connections, the most recently used last
+    private final ArrayDeque<Idle> idle = new ArrayDeque<>();
+
+    // closes connections that weren't used for too long
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "client-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static class Idle {
+        final Client client;
+        final long since;
+
+        Idle(Client client, long since) {
+            this.client = client;
+            this.since = since;
+        }
+    }
+
+    /**
+     * a pool with the default timeouts, KEEP_ALIVE and MAX_IDLE.
+     *
+     * @param ipAddress name of the server (IP address)
+     * @param port port the server is bound to
+     */
+    public ClientPool(String ipAddress, int port) {
+        this(ipAddress, port, Client.CONNECT_TIMEOUT, Client.READ_TIMEOUT, MAX_IDLE, KEEP_ALIVE);
+    }
+
+    /**
+     * @param ipAddress name of the server (IP address)
+     * @param port port the server is bound to
+     * @param connectTimeout milliseconds to wait for a connection to be established
+     * @param readTimeout milliseconds to wait for the server to send something
+     * @param maxIdle number of unused connections kept open
+     * @param keepAlive milliseconds an unused connection is kept open
+     */
+    public ClientPool(String ipAddress, int port, int connectTimeout, int readTimeout, int maxIdle, long keepAlive) {
+        this.ipAddress = ipAddress;
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxIdle = maxIdle;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * runs a task with a kept connection, or a new one if there is none.
+     *
+     * @param task the work to do, must not close the client
+     * @return what the task returned
+     * @throws IOException if the task failed on a new connection as well
+     */
+    public <T> T execute(Task<T> task) throws IOException {
+        Client client = takeIdle();
+        if (client != null) {
+            try {
+                return runOn(client, task);
+            } catch (IOException e) {
+                Log.i(TAG, "kept connection to main server is dead, trying a new one.");
+            }
+        }
+        return runOn(newClient(), task);
+    }
+
+    private <T> T runOn(Client client, Task<T> task) throws IOException {
+        boolean done = false;
+        try {
+            T result = task.run(client);
+            done = true;
+            return result;
+        } finally {
+            if (done) {
+                release(client);
+            } else {
+                client.close();
+            }
+        }
+    }
+
+    private Client newClient() throws IOException {
+        Client client = new Client(ipAddress, port, connectTimeout, readTimeout);
+        client.connect();
+        if (!client.isConnected()) {
+            client.close();
+            throw new IOException("connection to main server failed");
+        }
+        return client;
+    }
+
+    /**
+     * @return the most recently used connection that may still be alive, null if there is none.
+     */
+    private synchronized Client takeIdle() {
+        evictExpired();
+        Idle last = idle.pollLast();
+        return last == null ? null : last.client;
+    }
+
+    private void release(Client client) {
+        if (!client.isConnected()) {
+            client.close();
+            return;
+        }
+        synchronized (this) {
+            idle.addLast(new Idle(client, System.nanoTime()));
+            while (idle.size() > maxIdle) {
+                idle.pollFirst().client.close();
+            }
+        }
+        evictor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ClientPool.this) {
+                    evictExpired();
+                }
+            }
+        }, keepAlive, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * closes the connections that weren't used for keepAlive milliseconds. Called with the lock held.
+     */
+    private void evictExpired() {
+        long now = System.nanoTime();
+        Iterator<Idle> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            Idle entry = iterator.next();
+            if (now - entry.since >= TimeUnit.MILLISECONDS.toNanos(keepAlive) || !entry.client.isConnected()) {
+                entry.client.close();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * closes all kept connections.
+     */
+    public synchronized void closeIdle() {
+        for (Idle entry : idle) {
+            entry.client.close();
+        }
+        idle.clear();
+    }
+}
@@ -1,7 +1,10 @@
 package com.hello.coronatrackingapp.asyncoperations;
 
+import android.content.Context;
 import android.util.Log;
 
+import com.hello.coronatrackingapp.database.InfectedKeyHandler;
+
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -11,30 +14,136 @@ import java.util.ArrayList;
  * on what kind of exchange with the main server is needed.
  */
 public class ClientThread extends Thread {
+    private static final String TAG = "at ClientThread";
+    // connections to the main server, kept open between the threads
+    private static final ClientPool POOL = new ClientPool("85.214.47.200", 8000);
+    // one download at a time, a second one would wait for the transaction of the first to store its keys
+    private static final Object DOWNLOAD_LOCK = new Object();
+
     private String msg;
+    private ReportListener reportListener;
     private volatile ArrayList<String> infectedList;
+    private InfectedKeyHandler keyHandler;
+
+    /**
+     * Told on this thread how a report of an infection ended.
+     */
+    public interface ReportListener {
+        /**
+         * @param confirmed true if the main server stored the key, false if it refused
+         *                  it, for example because the password was wrong.
+         */
+        void onReported(boolean confirmed);
+
+        /**
+         * the main server couldn't be reached or didn't answer, on a new connection
+         * either. The key may have to be reported again.
+         */
+        void onReportFailed(IOException e);
+    }
+
+    /**
+     * reports an infection and tells a listener how it ended.
+     *
+     * @param msg the password followed by the users ID.
+     * @param listener told if the server confirmed the report, may be null.
+     */
+    public ClientThread(String msg, ReportListener listener) {
+        this.msg = msg;
+        this.reportListener = listener;
+    }
 
-    public ClientThread(String msg) {
+    /**
+     * downloads keys of infected people. The keys that were downloaded before are kept in the
+     * @see InfectedKeyHandler and only new keys are requested from the server.
+     * With "requestlist" as message all stored keys are collected afterwards (see
+     * getInfectedList()), with "updatelist" they are only stored.
+     *
+     * @param msg "requestlist" or "updatelist".
+     * @param context the calling activity's context, needed to access the stored keys.
+     */
+    public ClientThread(String msg, Context context) {
         this.msg = msg;
+        this.keyHandler = new InfectedKeyHandler(context);
     }
 
     @Override
     public void run() {
-        Client client = new Client("85.214.47.200", 8000);
-        client.connect();
         try {
             // download list of 'infected' keys
             if (msg.equals("requestlist")) {
-                infectedList = client.requestList();
+                downloadKeys();
+                infectedList = keyHandler.getKeys();
+            } else if (msg.equals("updatelist")) {
+                // only store the new keys, the evaluation reads them from the database
+                downloadKeys();
                 // upload key along with password upon infection
             } else {
-                client.sendData(msg);
+                report();
             }
         } catch (IOException i) {
             System.out.println(i);
         }
     }
 
+    /**
+     * sends the report. The pool sends it again on a new connection if a kept one
+     * doesn't answer, the server stores a key only once.
+     */
+    private void report() {
+        boolean confirmed;
+        try {
+            confirmed = POOL.execute(new ClientPool.Task<Boolean>() {
+                @Override
+                public Boolean run(Client client) throws IOException {
+                    return client.sendData(msg);
+                }
+            });
+        } catch (IOException e) {
+            Log.i(TAG, "reporting the infection failed. " + e);
+            if (reportListener != null) {
+                reportListener.onReportFailed(e);
+            }
+            return;
+        }
+        Log.i(TAG, confirmed ? "infection reported." : "main server refused the report.");
+        if (reportListener != null) {
+            reportListener.onReported(confirmed);
+        }
+    }
+
+    /**
+     * only fetches the keys added since the last download, stored while they are decoded.
+     * A download that waited for another one only fetches what that one didn't.
+     */
+    private void downloadKeys() throws IOException {
+        synchronized (DOWNLOAD_LOCK) {
+            final long cursor = keyHandler.getCursor();
+            final InfectedKeyHandler.KeyWriter writer = keyHandler.openWriter();
+            try {
+                POOL.execute(new ClientPool.Task<Long>() {
+                    @Override
+                    public Long run(Client client) throws IOException {
+                        return client.requestListSince(cursor, new KeyConsumer() {
+                            @Override
+                            public void begin(boolean reset, long cursor, int count) {
+                                writer.begin(reset, cursor, count);
+                            }
+
+                            @Override
+                            public void accept(String key) {
+                                writer.add(key);
+                            }
+                        });
+                    }
+                });
+                writer.commit();
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
     /**
      * getter for the fetched list of keys.
      *
@@ -0,0 +1,120 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.Arrays;
+
+/**
+ * The contact log in columns of primitives, the way the evaluation reads it (see
+ * @see com.hello.coronatrackingapp.database.DatabaseHandler#getContactColumns()):
+ * ids and timestamps as longs, and the checksums in one array with a fixed width
+ * of 32 bytes per contact. There is no object per contact, 50000 contacts take
+ * about 2.5 MB instead of 8.7 MB as lists of strings.
+ *
+ * The log stores checksums as the 32 bytes the other device sent. Version 1 of the
+ * log stored them as strings, bytes that weren't valid UTF-8 were replaced when
+ * logging them, so a checksum logged back then takes 32 to 96 bytes. Only its
+ * first 32 bytes are kept along with its length. They are compared with
+ * ChecksumHasher.matchesLoggedPrefix(), only with checksums of the same millisecond,
+ * and a different checksum that starts with the same 32 bytes is as unlikely as
+ * the same checksum. One of exactly 32 bytes is compared as it is, it either was
+ * sent like that or it was valid UTF-8, which the string didn't change.
+ *
+ * Rows are added in the order of the log, which is the order of the ids. Once
+ * loaded the columns are only read, so several threads can read them.
+ */
+public class ContactColumns {
+    // bytes kept of every checksum
+    public static final int WIDTH = ChecksumHasher.LENGTH;
+
+    private long[] ids;
+    private long[] timestamps;
+    // checksum of row i at i * WIDTH, padded with zeros if it was shorter
+    private byte[] checksums;
+    // bytes the logged checksum of every row had, unsigned, 255 for anything longer
+    private byte[] lengths;
+    private int size;
+
+    /**
+     * @param capacity number of contacts expected
+     */
+    public ContactColumns(int capacity) {
+        capacity = Math.max(1, capacity);
+        ids = new long[capacity];
+        timestamps = new long[capacity];
+        checksums = new byte[capacity * WIDTH];
+        lengths = new byte[capacity];
+    }
+
+    /**
+     * adds the next contact of the log.
+     * @param id id of the contact in the log, higher than the ids added before
+     * @param timestamp milliseconds of the contact
+     * @param logged the checksum as it was logged, sent bytes or the bytes of a string
+     */
+    public void add(long id, long timestamp, byte[] logged) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            checksums = Arrays.copyOf(checksums, capacity * WIDTH);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        ids[size] = id;
+        timestamps[size] = timestamp;
+        System.arraycopy(logged, 0, checksums, size * WIDTH, Math.min(logged.length, WIDTH));
+        lengths[size] = (byte) Math.min(logged.length, 255);
+        size++;
+    }
+
+    /**
+     * @return number of contacts
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    /**
+     * @return true if the checksum the hasher calculated last is the one logged in the row
+     */
+    public boolean matches(ChecksumHasher hasher, int row) {
+        int length = lengths[row] & 0xFF;
+        if (length == WIDTH) {
+            return hasher.matches(checksums, row * WIDTH);
+        }
+        return hasher.matchesLoggedPrefix(checksums, row * WIDTH, length);
+    }
+
+    /**
+     * @param id id of a contact
+     * @return its row, -1 if it isn't in the log
+     */
+    public int indexOf(long id) {
+        int row = firstAfter(id - 1);
+        return row < size && ids[row] == id ? row : -1;
+    }
+
+    /**
+     * @param id an id, 0 for the first row
+     * @return the first row with a higher id, the size if there is none
+     */
+    public int firstAfter(long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[middle] <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,153 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.Arrays;
+
+/**
+ * The contact log grouped by timestamp, for matching keys with it. A checksum can
+ * only be reproduced with the timestamp it was logged with, so a key is hashed once
+ * for every distinct timestamp and compared with the checksums of the contacts
+ * logged at that millisecond only. The index only holds the rows of every
+ * timestamp, the contacts stay in their {@link ContactColumns}.
+ *
+ * Timestamps have to be the digits of the milliseconds, the way the app logs them.
+ * Once built the index is only read, so several threads can match keys with it.
+ */
+public class ContactIndex {
+    private final ContactColumns log;
+    // timestamp of every bucket, a bucket holds the contacts logged at that millisecond
+    private final long[] bucketStamps;
+    // the contacts of bucket b are rows[bucketStart[b]] up to rows[bucketStart[b + 1]]
+    private final int[] bucketStart;
+    // rows in the log, by bucket
+    private final int[] rows;
+
+    /**
+     * @param log the contacts
+     * @param from first row of the log to index, the rows before are left out
+     */
+    public ContactIndex(ContactColumns log, int from) {
+        this.log = log;
+        int count = log.size() - from;
+        TimestampMap buckets = new TimestampMap();
+        int[] bucketOfRow = new int[count];
+        for (int i = 0; i < count; i++) {
+            bucketOfRow[i] = buckets.bucket(log.getTimestamp(from + i));
+        }
+        bucketStamps = Arrays.copyOf(buckets.stamps, buckets.size);
+
+        // counting sort of the rows by bucket, keeping the order of the log within a bucket
+        bucketStart = new int[buckets.size + 1];
+        for (int i = 0; i < count; i++) {
+            bucketStart[bucketOfRow[i] + 1]++;
+        }
+        for (int b = 0; b < buckets.size; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        int[] next = Arrays.copyOf(bucketStart, buckets.size);
+        rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[next[bucketOfRow[i]]++] = from + i;
+        }
+    }
+
+    /**
+     * @return number of contacts in the index
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * @param key key of an infected user
+     * @return the rows in the log of the contacts the key matches in ascending order, null if there are none
+     */
+    public int[] matchRows(String key) {
+        ChecksumHasher hasher = ChecksumHasher.get();
+        int[] found = null;
+        int count = 0;
+        for (int b = 0; b < bucketStamps.length; b++) {
+            hasher.hash(bucketStamps[b], key);
+            for (int e = bucketStart[b]; e < bucketStart[b + 1]; e++) {
+                if (log.matches(hasher, rows[e])) {
+                    if (found == null) {
+                        found = new int[8];
+                    } else if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = rows[e];
+                }
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        // back to the order of the log, the exposure time depends on it
+        Arrays.sort(found, 0, count);
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Numbers the distinct timestamps in the order they first occur, with open
+     * addressing on primitive longs so no Long is created per contact.
+     */
+    private static class TimestampMap {
+        private long[] keys = new long[64];
+        private int[] values = new int[64];
+        private boolean[] used = new boolean[64];
+        // the timestamps by their number
+        long[] stamps = new long[16];
+        int size;
+
+        /**
+         * @return the number of the timestamp, a new one if it didn't occur before
+         */
+        int bucket(long timestamp) {
+            int mask = keys.length - 1;
+            int slot = mix(timestamp) & mask;
+            while (used[slot]) {
+                if (keys[slot] == timestamp) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = timestamp;
+            values[slot] = size;
+            if (size == stamps.length) {
+                stamps = Arrays.copyOf(stamps, size * 2);
+            }
+            stamps[size] = timestamp;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return size - 1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (used[slot]) {
+                        slot = (slot + 1) & mask;
+                    }
+                    used[slot] = true;
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int mix(long timestamp) {
+            // milliseconds mostly differ in the low bits, spread them over the int
+            long h = timestamp * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs an evaluation on its own thread whenever one is asked for, but never more
+ * than one at a time: asking while an evaluation is waiting or running gets the
+ * result of that one, so pressing a button repeatedly or a timer going off during
+ * an evaluation doesn't start another one. If what the evaluation reads changed
+ * in the meantime, reevaluate() cancels the running one by interrupting it and
+ * starts over, everyone waiting gets the result of the new one.
+ *
+ * The result is delivered to listeners, on the thread of the evaluation, and by
+ * the Future evaluate() returns. Cancelling that Future cancels the evaluation
+ * for everyone waiting for it.
+ */
+public class EvaluationService<T> {
+    private static final String TAG = "at EvaluationService";
+
+    /**
+     * The work done for every evaluation.
+     */
+    public interface Evaluation<T> {
+        /**
+         * @return the result handed to everyone waiting
+         * @throws CancellationException if the thread was interrupted, the evaluation should stop soon then
+         * @throws Exception if the evaluation failed, handed to everyone waiting
+         */
+        T evaluate() throws Exception;
+    }
+
+    /**
+     * Told about the result of the evaluation it asked for, on the thread of the evaluation.
+     */
+    public interface Listener<T> {
+        void onResult(T result);
+
+        /**
+         * @param e why there is no result, a CancellationException if the evaluation was cancelled
+         */
+        void onFailure(Exception e);
+    }
+
+    private final Evaluation<T> evaluation;
+    private final ExecutorService executor;
+    // the evaluation that is waiting or running, null if there is none
+    private Run current;
+
+    /**
+     * runs the evaluations on a thread of their own, one at a time.
+     */
+    public EvaluationService(Evaluation<T> evaluation) {
+        this(evaluation, new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "risk-evaluation");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        }));
+        ((ThreadPoolExecutor) executor).allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param evaluation the work done for every evaluation
+     * @param executor runs the evaluations, its threads are all the CPU they get
+     */
+    public EvaluationService(Evaluation<T> evaluation, ExecutorService executor) {
+        this.evaluation = evaluation;
+        this.executor = executor;
+    }
+
+    /**
+     * starts an evaluation if none is waiting or running.
+     * @return the result of the evaluation
+     */
+    public Future<T> evaluate() {
+        return evaluate(null);
+    }
+
+    /**
+     * starts an evaluation if none is waiting or running.
+     * @param listener told about the result, may be null
+     * @return the result of the evaluation
+     */
+    public Future<T> evaluate(Listener<T> listener) {
+        Pending pending;
+        synchronized (this) {
+            if (current == null) {
+                start(new Pending());
+            } else {
+                Log.i(TAG, "evaluation already " + (current.started ? "running." : "waiting."));
+            }
+            pending = current.pending;
+        }
+        pending.addListener(listener);
+        return pending;
+    }
+
+    /**
+     * starts an evaluation, cancelling the running one because its result would be
+     * outdated. One that didn't start yet reads everything anew anyway.
+     * @return the result of the evaluation
+     */
+    public Future<T> reevaluate() {
+        return reevaluate(null);
+    }
+
+    /**
+     * starts an evaluation, cancelling the running one because its result would be
+     * outdated. One that didn't start yet reads everything anew anyway.
+     * @param listener told about the result, may be null
+     * @return the result of the evaluation
+     */
+    public Future<T> reevaluate(Listener<T> listener) {
+        Pending pending;
+        synchronized (this) {
+            if (current == null) {
+                start(new Pending());
+            } else if (current.started) {
+                Log.i(TAG, "evaluation superseded, starting over.");
+                Run superseded = current;
+                start(superseded.pending);
+                superseded.future.cancel(true);
+            }
+            pending = current.pending;
+        }
+        pending.addListener(listener);
+        return pending;
+    }
+
+    /**
+     * cancels the evaluation and stops the threads, no evaluation can be started anymore.
+     */
+    public void shutdown() {
+        Pending pending;
+        synchronized (this) {
+            pending = current != null ? current.pending : null;
+        }
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        executor.shutdownNow();
+    }
+
+    private void start(Pending pending) {
+        current = new Run(pending);
+        current.future = executor.submit(current);
+    }
+
+    /**
+     * One run of the evaluation.
+     */
+    private class Run implements Runnable {
+        final Pending pending;
+        Future<?> future;
+        // guarded by the service
+        boolean started;
+
+        Run(Pending pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            synchronized (EvaluationService.this) {
+                if (current != this) {
+                    return;
+                }
+                started = true;
+            }
+            T result = null;
+            Exception failure = null;
+            try {
+                result = evaluation.evaluate();
+            } catch (Exception e) {
+                failure = e;
+            }
+            synchronized (EvaluationService.this) {
+                if (current != this) {
+                    // superseded or cancelled, the pending result isn't this run's anymore
+                    return;
+                }
+                current = null;
+            }
+            if (failure != null) {
+                pending.fail(failure);
+            } else {
+                pending.complete(result);
+            }
+        }
+    }
+
+    /**
+     * The result everyone who asked for the same evaluation waits for.
+     */
+    private class Pending implements Future<T> {
+        private final ArrayList<Listener<T>> listeners = new ArrayList<>();
+        // a result or failure was set, the listeners are being told
+        private boolean finishing;
+        private boolean done;
+        private T result;
+        private Exception failure;
+
+        void addListener(Listener<T> listener) {
+            if (listener == null) {
+                return;
+            }
+            synchronized (this) {
+                if (!done) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            deliver(listener);
+        }
+
+        void complete(T result) {
+            finish(result, null);
+        }
+
+        void fail(Exception failure) {
+            finish(null, failure);
+        }
+
+        private void finish(T result, Exception failure) {
+            synchronized (this) {
+                if (finishing) {
+                    return;
+                }
+                finishing = true;
+                this.result = result;
+                this.failure = failure;
+            }
+            // the listeners are told before get() returns, also those that are added meanwhile
+            while (true) {
+                ArrayList<Listener<T>> waiting;
+                synchronized (this) {
+                    if (listeners.isEmpty()) {
+                        done = true;
+                        notifyAll();
+                        return;
+                    }
+                    waiting = new ArrayList<>(listeners);
+                    listeners.clear();
+                }
+                for (Listener<T> listener : waiting) {
+                    deliver(listener);
+                }
+            }
+        }
+
+        private void deliver(Listener<T> listener) {
+            if (failure != null) {
+                listener.onFailure(failure);
+            } else {
+                listener.onResult(result);
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            synchronized (EvaluationService.this) {
+                if (current != null && current.pending == this) {
+                    if (current.started && !mayInterruptIfRunning) {
+                        return false;
+                    }
+                    current.future.cancel(true);
+                    current = null;
+                }
+            }
+            synchronized (this) {
+                if (finishing) {
+                    return false;
+                }
+            }
+            fail(new CancellationException());
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return failure instanceof CancellationException;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public synchronized T get() throws InterruptedException, ExecutionException {
+            while (!done) {
+                wait();
+            }
+            return report();
+        }
+
+        @Override
+        public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!done) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return report();
+        }
+
+        private T report() throws ExecutionException {
+            if (failure instanceof CancellationException) {
+                throw (CancellationException) failure;
+            } else if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+    }
+}
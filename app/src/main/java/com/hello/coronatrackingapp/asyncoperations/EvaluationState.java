@@ -0,0 +1,97 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * What {@link IncrementalRiskEvaluator} remembers between two evaluations: up to
+ * which key and which contact everything was evaluated, and the contacts every key
+ * matched so far. It is stored by
+ * @see com.hello.coronatrackingapp.database.EvaluationStateHandler
+ */
+public class EvaluationState {
+    // sequence number of the last key evaluated, 0 if none
+    private long keyCursor;
+    // the key with that sequence number, the keys were replaced if it changed
+    private String cursorKey;
+    // id of the last contact evaluated, 0 if none
+    private long contactCursor;
+    // sequence number of a key -> the contacts it matched
+    private final HashMap<Long, KeyMatches> matches = new HashMap<>();
+
+    /**
+     * The contacts one key matched, in the order of the log.
+     */
+    public static class KeyMatches {
+        long[] contactIds = new long[4];
+        long[] timestamps = new long[4];
+        int size;
+
+        /**
+         * adds a contact that was logged after those added before.
+         * @param contactId id of the contact in the log
+         * @param timestamp timestamp of the contact
+         */
+        public void add(long contactId, long timestamp) {
+            if (size == contactIds.length) {
+                contactIds = Arrays.copyOf(contactIds, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+            }
+            contactIds[size] = contactId;
+            timestamps[size] = timestamp;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getContactId(int i) {
+            return contactIds[i];
+        }
+
+        public long getTimestamp(int i) {
+            return timestamps[i];
+        }
+    }
+
+    public long getKeyCursor() {
+        return keyCursor;
+    }
+
+    public String getCursorKey() {
+        return cursorKey;
+    }
+
+    public long getContactCursor() {
+        return contactCursor;
+    }
+
+    /**
+     * @param keyCursor sequence number of the last key evaluated
+     * @param cursorKey the key with that sequence number, null if there is none
+     * @param contactCursor id of the last contact evaluated
+     */
+    public void setCursors(long keyCursor, String cursorKey, long contactCursor) {
+        this.keyCursor = keyCursor;
+        this.cursorKey = cursorKey;
+        this.contactCursor = contactCursor;
+    }
+
+    /**
+     * @return sequence numbers of the keys -> the contacts they matched, changes change the state
+     */
+    public HashMap<Long, KeyMatches> getMatches() {
+        return matches;
+    }
+
+    /**
+     * forgets everything, the next evaluation starts from scratch.
+     */
+    public void clear() {
+        keyCursor = 0;
+        cursorKey = null;
+        contactCursor = 0;
+        matches.clear();
+    }
+}
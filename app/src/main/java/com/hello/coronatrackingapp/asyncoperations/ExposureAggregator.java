@@ -0,0 +1,177 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.Arrays;
+
+/**
+ * Adds up how long the user was exposed to infected users, one key after the other.
+ * The timestamps of a key are sorted first, devices don't always log in the order
+ * of their clocks, and then the time between two contacts counts if it is less
+ * than the gap: if they are further apart, the user was probably out of the
+ * exposure range for a while.
+ *
+ * Besides the total, the exposure is collected per day before now, the time between
+ * two contacts counts for the day of the later one, and weighted by those days, so
+ * that older contacts can count less. A contact after a gap (the first of an
+ * encounter) can be credited with some time as well, otherwise an encounter with a
+ * single contact counts nothing.
+ *
+ * The app uses the defaults, which add up the exposure the way it always did: only
+ * the time between contacts counts, the first contact of an encounter gets no credit.
+ * A single contact doesn't tell how long the devices were near each other, and
+ * HIGH_RISK_INTERVALS in RiskEvaluationThread is meant for time between contacts.
+ *
+ * The timestamps are collected in one array that is reused for every key, so
+ * adding a key creates no objects. An aggregator must not be shared between threads.
+ */
+public class ExposureAggregator {
+    // contacts further apart than a minute belong to different encounters
+    public static final long DEFAULT_GAP = 60 * 1000;
+    // the first contact of an encounter counts nothing, see above
+    public static final long DEFAULT_CONTACT_CREDIT = 0;
+    // contacts are deleted after 14 days, so there are no more days to collect
+    public static final int DEFAULT_DAYS = 14;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private final long gap;
+    private final long contactCredit;
+    private final double[] dayWeights;
+    private final long now;
+
+    private long[] stamps = new long[64];
+    private int contacts;
+    private long exposure;
+    private final long[] dayExposure;
+
+    /**
+     * adds up the exposure with the defaults, all days weigh 1.
+     * @param now milliseconds the days are counted back from
+     */
+    public ExposureAggregator(long now) {
+        this(DEFAULT_GAP, DEFAULT_CONTACT_CREDIT, uniformWeights(DEFAULT_DAYS), now);
+    }
+
+    /**
+     * @param gap milliseconds from which on the time between two contacts doesn't count
+     * @param contactCredit milliseconds a contact after a gap counts
+     * @param dayWeights weight of the exposure on every day, today first. Exposure on
+     * older days only counts for the total.
+     * @param now milliseconds the days are counted back from
+     */
+    public ExposureAggregator(long gap, long contactCredit, double[] dayWeights, long now) {
+        if (gap <= 0 || contactCredit < 0) {
+            throw new IllegalArgumentException("gap " + gap + ", credit " + contactCredit);
+        }
+        this.gap = gap;
+        this.contactCredit = contactCredit;
+        this.dayWeights = dayWeights.clone();
+        this.now = now;
+        dayExposure = new long[dayWeights.length];
+    }
+
+    /**
+     * @return weights of 1 for the days
+     */
+    public static double[] uniformWeights(int days) {
+        double[] weights = new double[days];
+        Arrays.fill(weights, 1);
+        return weights;
+    }
+
+    /**
+     * adds the contacts of one key.
+     * @param log the contact log
+     * @param rows rows of the contacts the key matched, in any order
+     */
+    public void addKey(ContactColumns log, int[] rows) {
+        ensureCapacity(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            stamps[i] = log.getTimestamp(rows[i]);
+        }
+        aggregate(rows.length);
+    }
+
+    /**
+     * adds the contacts of one key.
+     * @param timestamps timestamps of the contacts the key matched, in any order, not changed
+     * @param count number of timestamps, from the start of the array
+     */
+    public void addKey(long[] timestamps, int count) {
+        ensureCapacity(count);
+        System.arraycopy(timestamps, 0, stamps, 0, count);
+        aggregate(count);
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > stamps.length) {
+            stamps = new long[Math.max(count, stamps.length * 2)];
+        }
+    }
+
+    private void aggregate(int count) {
+        Arrays.sort(stamps, 0, count);
+        contacts += count;
+        for (int i = 0; i < count; i++) {
+            long time;
+            if (i > 0 && stamps[i] - stamps[i - 1] < gap) {
+                time = stamps[i] - stamps[i - 1];
+            } else {
+                time = contactCredit;
+            }
+            exposure += time;
+            // contacts from clocks ahead of this one count for today
+            long daysAgo = Math.max(0, (now - stamps[i]) / DAY);
+            if (daysAgo < dayExposure.length) {
+                dayExposure[(int) daysAgo] += time;
+            }
+        }
+    }
+
+    /**
+     * @return number of contacts added
+     */
+    public int getContacts() {
+        return contacts;
+    }
+
+    /**
+     * @return milliseconds the user was exposed
+     */
+    public long getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @param daysAgo 0 for today, the last 24 hours before now
+     * @return milliseconds the user was exposed on that day
+     */
+    public long getDayExposure(int daysAgo) {
+        return dayExposure[daysAgo];
+    }
+
+    /**
+     * @return number of days the exposure is collected for
+     */
+    public int getDays() {
+        return dayExposure.length;
+    }
+
+    /**
+     * @return milliseconds exposed on the days, weighted
+     */
+    public long getWeightedExposure() {
+        double weighted = 0;
+        for (int day = 0; day < dayExposure.length; day++) {
+            weighted += dayExposure[day] * dayWeights[day];
+        }
+        return Math.round(weighted);
+    }
+
+    /**
+     * forgets everything added, to aggregate again with the same settings.
+     */
+    public void clear() {
+        contacts = 0;
+        exposure = 0;
+        Arrays.fill(dayExposure, 0);
+    }
+}
@@ -0,0 +1,396 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding of version 2 of the protocol spoken with the main server. After the
+ * client sent the line "version 2" and the server answered with the same line, both
+ * sides only exchange frames: a type byte, the length of the payload as int and the
+ * payload, all big endian. Keys travel as the 16 bytes of their UUID.
+ *
+ * LIST (client): cursor (long), 0 for all keys, followed by the encoding the client
+ * would like to get the keys in (byte). Answered with KEYS.
+ * REPORT (client): key (16 bytes), followed by the password in UTF-8. Answered with ACK.
+ * KEYS (server): reset flag (byte), encoding of the keys (byte), cursor (long), number of
+ * keys (int), the encoded keys.
+ * ACK (server): 0 if the report is stored, 1 if not.
+ * The server also answers FILTER_REQUEST frames (5) with FILTER frames (6), Bloom filters
+ * over the keys. The app doesn't request them: contacts can't be matched against a filter.
+ *
+ * The write methods don't flush, so several frames can be sent at once.
+ *
+ * Encodings: RAW sends the 16 bytes of every key, DEFLATE the same compressed with deflate.
+ * SORTED sends the keys sorted as unsigned 128 bit numbers, each as its distance to the one
+ * before, Rice coded with the parameter riceParameter(count): the quotient in unary, then
+ * the remainder. That takes about 2 + log2(2^128 / count) bits per key, random UUIDs can't
+ * be compressed much further.
+ */
+public class FrameCodec {
+    public static final String VERSION_LINE = "version 2";
+
+    public static final byte LIST = 1;
+    public static final byte REPORT = 2;
+    public static final byte KEYS = 3;
+    public static final byte ACK = 4;
+
+    public static final byte RAW = 0;
+    public static final byte DEFLATE = 1;
+    public static final byte SORTED = 2;
+
+    public static final int KEY_SIZE = 16;
+
+    // reset flag, encoding, cursor and number of keys in front of the keys of a KEYS frame
+    private static final int KEYS_HEADER_SIZE = 14;
+
+    private FrameCodec() {
+    }
+
+    /**
+     * @param cursor sequence number of the last key downloaded so far, 0 for all keys.
+     * @param encoding the encoding the keys should be sent in, the server may use RAW instead.
+     */
+    public static void writeList(DataOutputStream out, long cursor, byte encoding) throws IOException {
+        out.writeByte(LIST);
+        out.writeInt(9);
+        out.writeLong(cursor);
+        out.writeByte(encoding);
+    }
+
+    /**
+     * @param key the users ID, a UUID.
+     * @param password the password given upon infection.
+     * @throws IllegalArgumentException if the key isn't a UUID.
+     */
+    public static void writeReport(DataOutputStream out, String key, String password) throws IOException {
+        UUID uuid = UUID.fromString(key);
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(REPORT);
+        out.writeInt(KEY_SIZE + passwordBytes.length);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+        out.write(passwordBytes);
+    }
+
+    /**
+     * writes the answer to a LIST frame, the way the server does.
+     */
+    public static void writeKeys(DataOutputStream out, boolean reset, long cursor, List<String> keys, byte encoding)
+            throws IOException {
+        byte[] data = encode(keys, encoding);
+        out.writeByte(KEYS);
+        out.writeInt(KEYS_HEADER_SIZE + data.length);
+        out.writeByte(reset ? 1 : 0);
+        out.writeByte(encoding);
+        out.writeLong(cursor);
+        out.writeInt(keys.size());
+        out.write(data);
+    }
+
+    private static byte[] encode(List<String> keys, byte encoding) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (encoding == SORTED) {
+            // UUID.compareTo compares signed, flipping the sign bits makes that an unsigned order
+            UUID[] sorted = new UUID[keys.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                UUID uuid = UUID.fromString(keys.get(i));
+                sorted[i] = new UUID(uuid.getMostSignificantBits() ^ Long.MIN_VALUE, uuid.getLeastSignificantBits() ^ Long.MIN_VALUE);
+            }
+            Arrays.sort(sorted);
+            int k = riceParameter(keys.size());
+            BitOutput bits = new BitOutput(bytes);
+            long previousHigh = 0;
+            long previousLow = 0;
+            for (UUID uuid : sorted) {
+                long high = uuid.getMostSignificantBits() ^ Long.MIN_VALUE;
+                long low = uuid.getLeastSignificantBits() ^ Long.MIN_VALUE;
+                long gapHigh = high - previousHigh - (unsignedLess(low, previousLow) ? 1 : 0);
+                bits.writeUnary(gapHigh >>> (k - 64));
+                bits.write(gapHigh, k - 64);
+                bits.write(low - previousLow, 64);
+                previousHigh = high;
+                previousLow = low;
+            }
+            bits.flush();
+        } else {
+            Deflater deflater = new Deflater();
+            OutputStream out = encoding == DEFLATE ? new DeflaterOutputStream(bytes, deflater) : bytes;
+            DataOutputStream data = new DataOutputStream(out);
+            for (String key : keys) {
+                UUID uuid = UUID.fromString(key);
+                data.writeLong(uuid.getMostSignificantBits());
+                data.writeLong(uuid.getLeastSignificantBits());
+            }
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+            }
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * writes the answer to a REPORT frame, the way the server does.
+     */
+    public static void writeAck(DataOutputStream out, boolean ok) throws IOException {
+        out.writeByte(ACK);
+        out.writeInt(1);
+        out.writeByte(ok ? 0 : 1);
+    }
+
+    /**
+     * reads the answer to a LIST frame.
+     *
+     * @return the keys along with the new cursor.
+     * @throws IOException if the server sent something else.
+     */
+    public static KeyDelta readKeys(DataInputStream in) throws IOException {
+        final ArrayList<String> keys = new ArrayList<>();
+        final boolean[] reset = new boolean[1];
+        long cursor = readKeys(in, new KeyConsumer() {
+            @Override
+            public void begin(boolean resetKeys, long cursor, int count) {
+                reset[0] = resetKeys;
+                keys.ensureCapacity(count);
+            }
+
+            @Override
+            public void accept(String key) {
+                keys.add(key);
+            }
+        });
+        return new KeyDelta(reset[0], cursor, keys);
+    }
+
+    /**
+     * reads the answer to a LIST frame, passing every key on as soon as it is decoded.
+     *
+     * @param consumer receives the keys.
+     * @return the new cursor.
+     * @throws IOException if the server sent something else.
+     */
+    public static long readKeys(DataInputStream in, KeyConsumer consumer) throws IOException {
+        int length = readHeader(in, KEYS);
+        boolean reset = in.readByte() != 0;
+        byte encoding = in.readByte();
+        long cursor = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || length < KEYS_HEADER_SIZE) {
+            throw new IOException("malformed KEYS frame");
+        }
+        consumer.begin(reset, cursor, count);
+
+        // nothing after the frame may be consumed
+        InputStream data = new FrameInputStream(in, length - KEYS_HEADER_SIZE);
+        if (encoding == SORTED) {
+            int k = riceParameter(count);
+            BitInput bits = new BitInput(data);
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < count; i++) {
+                long gapHigh = (bits.readUnary() << (k - 64)) | bits.read(k - 64);
+                long previousLow = low;
+                low += bits.read(64);
+                high += gapHigh + (unsignedLess(low, previousLow) ? 1 : 0);
+                consumer.accept(new UUID(high, low).toString());
+            }
+        } else if (encoding == RAW || encoding == DEFLATE) {
+            DataInputStream keys = new DataInputStream(encoding == DEFLATE ? new InflaterInputStream(data) : data);
+            for (int i = 0; i < count; i++) {
+                consumer.accept(new UUID(keys.readLong(), keys.readLong()).toString());
+            }
+        } else {
+            throw new IOException("unknown encoding " + encoding);
+        }
+        // skips what is left of the frame, for example the end of the deflate stream
+        while (data.read() >= 0) {
+            // nothing to do
+        }
+        return cursor;
+    }
+
+    /**
+     * reads the answer to a REPORT frame.
+     *
+     * @return true if the server stored the key.
+     * @throws IOException if the server sent something else.
+     */
+    public static boolean readAck(DataInputStream in) throws IOException {
+        if (readHeader(in, ACK) != 1) {
+            throw new IOException("malformed ACK frame");
+        }
+        return in.readByte() == 0;
+    }
+
+    /**
+     * @return the number of bits of a gap between sorted keys sent as they are, so that
+     * the quotient is about 1 on average: log2(2^128 / count).
+     */
+    static int riceParameter(int count) {
+        return 128 - (32 - Integer.numberOfLeadingZeros(count));
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * reads type and length of a frame.
+     *
+     * @param expected the type of frame that has to follow.
+     * @return the length of the payload.
+     */
+    private static int readHeader(DataInputStream in, byte expected) throws IOException {
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (type != expected) {
+            throw new IOException("expected frame " + expected + ", got " + type);
+        }
+        return length;
+    }
+
+    /**
+     * the payload of one frame, ends where the frame ends.
+     */
+    private static final class FrameInputStream extends FilterInputStream {
+        private int remaining;
+
+        FrameInputStream(InputStream in, int length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b < 0) {
+                throw new IOException("frame ended early");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, Math.min(length, remaining));
+            if (read < 0) {
+                throw new IOException("frame ended early");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(super.available(), remaining);
+        }
+    }
+
+    /**
+     * writes bits, the most significant first.
+     */
+    private static final class BitOutput {
+        private final OutputStream out;
+        private int current;
+        private int bitCount;
+
+        BitOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        // writes the lowest n bits of value
+        void write(long value, int n) throws IOException {
+            while (n > 0) {
+                int take = Math.min(8 - bitCount, n);
+                current = (current << take) | (int) ((value >>> (n - take)) & ((1 << take) - 1));
+                bitCount += take;
+                n -= take;
+                if (bitCount == 8) {
+                    out.write(current);
+                    current = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+
+        // writes value one bits followed by a zero bit
+        void writeUnary(long value) throws IOException {
+            for (; value > 64; value -= 64) {
+                write(-1L, 64);
+            }
+            write(-1L, (int) value);
+            write(0, 1);
+        }
+
+        void flush() throws IOException {
+            if (bitCount > 0) {
+                write(0, 8 - bitCount);
+            }
+        }
+    }
+
+    /**
+     * reads what a BitOutput wrote.
+     */
+    private static final class BitInput {
+        private final InputStream in;
+        private int current;
+        private int bitsLeft;
+
+        BitInput(InputStream in) {
+            this.in = in;
+        }
+
+        long read(int n) throws IOException {
+            long value = 0;
+            while (n > 0) {
+                if (bitsLeft == 0) {
+                    current = in.read();
+                    if (current < 0) {
+                        throw new IOException("malformed keys");
+                    }
+                    bitsLeft = 8;
+                }
+                int take = Math.min(bitsLeft, n);
+                value = (value << take) | ((current >>> (bitsLeft - take)) & ((1 << take) - 1));
+                bitsLeft -= take;
+                n -= take;
+            }
+            return value;
+        }
+
+        long readUnary() throws IOException {
+            long value = 0;
+            while (read(1) == 1) {
+                value++;
+            }
+            return value;
+        }
+    }
+}
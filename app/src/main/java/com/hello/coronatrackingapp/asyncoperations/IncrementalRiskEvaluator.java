@@ -0,0 +1,181 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Evaluates the risk without starting from scratch every time: keys and logged
+ * contacts don't change once they are stored, so an evaluation only has to match
+ * the keys that are new since the last one with all contacts, and the older keys
+ * with the contacts that are new. What was matched before is kept in an
+ * {@link EvaluationState}. The result is the same as matching everything again.
+ *
+ * Contacts are logged with ids that only grow (the log's ids are AUTOINCREMENT),
+ * so the log's order is the order of the ids and new contacts are those with
+ * higher ids than the last one evaluated. Contacts that were deleted from the log
+ * since are removed from the matches.
+ *
+ * The evaluation stops with a CancellationException when the thread is interrupted,
+ * the state is only partly updated then and mustn't be saved.
+ */
+public class IncrementalRiskEvaluator {
+    private static final String TAG = "at IncrementalRiskEvaluator";
+
+    /**
+     * The stored keys of infected users, with the sequence numbers they have on the
+     * main server (see {@link com.hello.coronatrackingapp.database.InfectedKeyHandler}).
+     */
+    public interface KeySource {
+        /**
+         * @return sequence number of the last key, 0 if there are none
+         */
+        long getCursor();
+
+        /**
+         * @param sequence sequence number of a key
+         * @return the key with that number, null if there is none
+         */
+        String getKey(long sequence);
+
+        /**
+         * passes the keys with sequence numbers after from and up to to on, in their order.
+         */
+        void readKeys(long from, long to, SequencedKeyConsumer consumer);
+    }
+
+    /**
+     * Receives stored keys along with their sequence numbers.
+     */
+    public interface SequencedKeyConsumer {
+        void accept(long sequence, String key);
+    }
+
+    /**
+     * evaluates what changed since the state was last updated, updates it and adds
+     * the contacts of every key that matched to the aggregator.
+     *
+     * @param state what was evaluated before, empty to start from scratch
+     * @param log the logged contacts in the order of their ids
+     * @param keys the stored keys of infected users
+     * @param exposure adds up the exposure to infected users
+     */
+    public void evaluate(EvaluationState state, final ContactColumns log, KeySource keys, ExposureAggregator exposure) {
+        long lastKey = keys.getCursor();
+        long lastContact = log.size() == 0 ? 0 : log.getId(log.size() - 1);
+        if (!isValid(state, keys, lastKey, lastContact)) {
+            state.clear();
+        }
+
+        removeDeletedContacts(state, log);
+
+        final HashMap<Long, EvaluationState.KeyMatches> matches = state.getMatches();
+        int firstNew = log.firstAfter(state.getContactCursor());
+        Log.i(TAG, "evaluating " + (lastKey - state.getKeyCursor()) + " new keys and "
+                + (log.size() - firstNew) + " new contacts.");
+        // the older keys with the new contacts
+        if (firstNew < log.size() && state.getKeyCursor() > 0) {
+            final ContactIndex index = new ContactIndex(log, firstNew);
+            keys.readKeys(0, state.getKeyCursor(), new SequencedKeyConsumer() {
+                @Override
+                public void accept(long sequence, String key) {
+                    checkInterrupted();
+                    int[] rows = index.matchRows(key);
+                    if (rows != null) {
+                        EvaluationState.KeyMatches keyMatches = matches.get(sequence);
+                        if (keyMatches == null) {
+                            keyMatches = new EvaluationState.KeyMatches();
+                            matches.put(sequence, keyMatches);
+                        }
+                        append(keyMatches, rows, log);
+                    }
+                }
+            });
+        }
+
+        // the new keys with all contacts
+        if (lastKey > state.getKeyCursor() && log.size() > 0) {
+            final ContactIndex index = new ContactIndex(log, 0);
+            keys.readKeys(state.getKeyCursor(), lastKey, new SequencedKeyConsumer() {
+                @Override
+                public void accept(long sequence, String key) {
+                    checkInterrupted();
+                    int[] rows = index.matchRows(key);
+                    if (rows != null) {
+                        EvaluationState.KeyMatches keyMatches = new EvaluationState.KeyMatches();
+                        append(keyMatches, rows, log);
+                        matches.put(sequence, keyMatches);
+                    }
+                }
+            });
+        }
+
+        state.setCursors(lastKey, lastKey > 0 ? keys.getKey(lastKey) : null,
+                Math.max(state.getContactCursor(), lastContact));
+
+        // the days are counted back from the aggregator's now, so the matches are weighted anew every time
+        for (EvaluationState.KeyMatches keyMatches : matches.values()) {
+            exposure.addKey(keyMatches.timestamps, keyMatches.size());
+        }
+    }
+
+    /**
+     * @throws CancellationException if the thread was interrupted, the state mustn't be saved then
+     */
+    private static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * @return false if the state doesn't belong to the stored keys and contacts anymore
+     */
+    private boolean isValid(EvaluationState state, KeySource keys, long lastKey, long lastContact) {
+        if (state.getKeyCursor() > 0) {
+            // the keys were replaced when the server didn't know the cursor anymore
+            String key = keys.getKey(state.getKeyCursor());
+            if (state.getKeyCursor() > lastKey || key == null || !key.equals(state.getCursorKey())) {
+                return false;
+            }
+        }
+        // ids only grow unless the log was created anew
+        return lastContact == 0 || lastContact >= state.getContactCursor();
+    }
+
+    /**
+     * removes the matched contacts that aren't in the log anymore.
+     */
+    private void removeDeletedContacts(EvaluationState state, ContactColumns log) {
+        HashMap<Long, EvaluationState.KeyMatches> matches = state.getMatches();
+        Iterator<Map.Entry<Long, EvaluationState.KeyMatches>> iterator = matches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, EvaluationState.KeyMatches> entry = iterator.next();
+            EvaluationState.KeyMatches old = entry.getValue();
+            EvaluationState.KeyMatches kept = new EvaluationState.KeyMatches();
+            for (int i = 0; i < old.size(); i++) {
+                int row = log.indexOf(old.getContactId(i));
+                if (row >= 0 && log.getTimestamp(row) == old.getTimestamp(i)) {
+                    kept.add(old.getContactId(i), old.getTimestamp(i));
+                }
+            }
+            if (kept.size() == 0) {
+                iterator.remove();
+            } else if (kept.size() < old.size()) {
+                entry.setValue(kept);
+            }
+        }
+    }
+
+    /**
+     * adds matched contacts that follow the ones matched before.
+     */
+    private static void append(EvaluationState.KeyMatches keyMatches, int[] rows, ContactColumns log) {
+        for (int row : rows) {
+            keyMatches.add(log.getId(row), log.getTimestamp(row));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+/**
+ * Receives the keys of a download one at a time, while they are decoded
+ * (see {@link Client#requestListSince(long, KeyConsumer)}), so the whole list
+ * never needs to be held in memory as it came from the server.
+ */
+public interface KeyConsumer {
+    /**
+     * called once before the first key.
+     *
+     * @param reset true if the server didn't know the cursor and sends all of its keys.
+     * @param cursor sequence number of the last key the client has after this download.
+     * @param count the number of keys that follow.
+     */
+    void begin(boolean reset, long cursor, int count);
+
+    /**
+     * @param key the next key.
+     */
+    void accept(String key);
+}
@@ -0,0 +1,36 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.ArrayList;
+
+/**
+ * The keys of a KEYS frame the main server sent, all of them in one list
+ * (see {@link FrameCodec#readKeys(java.io.DataInputStream)}).
+ */
+public class KeyDelta {
+    private final boolean reset;
+    private final long cursor;
+    private final ArrayList<String> keys;
+
+    /**
+     * @param reset true if the server didn't know the cursor and sent all of its keys.
+     * @param cursor sequence number of the last key the client has after this download.
+     * @param keys the keys added since the cursor the client sent.
+     */
+    public KeyDelta(boolean reset, long cursor, ArrayList<String> keys) {
+        this.reset = reset;
+        this.cursor = cursor;
+        this.keys = keys;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public ArrayList<String> getKeys() {
+        return keys;
+    }
+}
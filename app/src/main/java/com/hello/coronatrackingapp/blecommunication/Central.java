@@ -14,9 +14,8 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.hello.coronatrackingapp.R;
+import com.hello.coronatrackingapp.asyncoperations.ChecksumHasher;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
@@ -57,6 +56,8 @@ public class Central {
 
     byte[] checksum;
     int writeCounter;
+    // the users UUID, it never changes once it is created
+    private String id;
 
     public Central(Context context) {
         this.context = context;
@@ -144,8 +145,9 @@ public class Central {
             super.onServicesDiscovered(gatt, status);
             Log.i(TAG, "status at discovered " + status);
 
-            String timeStamp = new Long(new Date().getTime()).toString();
-            checksum = encryptWithDigest(timeStamp);
+            long time = new Date().getTime();
+            String timeStamp = Long.toString(time);
+            checksum = encryptWithDigest(time);
 
             BluetoothGattCharacteristic characteristicDate = gatt.getService(Service_UUID).getCharacteristic(Characteristic_UUID_Date);
             characteristicDate.setValue(timeStamp);
@@ -234,21 +236,12 @@ public class Central {
      * @param timeStamp to be used.
      * @return a byte array containing the checksum.
      */
-    private byte[] encryptWithDigest(String timeStamp) {
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        String id = preferences.getString("ID", "default");
-
-        MessageDigest messageDigest = null;
-        try {
-            messageDigest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+    private byte[] encryptWithDigest(long timeStamp) {
+        if (id == null) {
+            SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+            id = preferences.getString("ID", "default");
         }
-
-        messageDigest.update((timeStamp + id).getBytes());
-        byte[] checksum = messageDigest.digest();
-
-        return checksum;
+        return ChecksumHasher.get().checksum(timeStamp, id);
     }
 
     /**
@@ -15,7 +15,9 @@ import android.util.Log;
 import com.hello.coronatrackingapp.R;
 import com.hello.coronatrackingapp.database.DatabaseHandler;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -46,7 +48,7 @@ public class Peripheral {
     // a map to distinguish between different devices that are connected at the
     // same time thereby not mixing up the received information and assigning it
     // to the correct device.
-    Map<BluetoothDevice, ArrayList<String>> deviceMap = new HashMap<>();
+    Map<BluetoothDevice, ArrayList<byte[]>> deviceMap = new HashMap<>();
 
     public Peripheral(Context context, BluetoothAdapter bluetoothAdapter, DatabaseHandler databaseHandler) {
         this.context = context;
@@ -91,26 +93,43 @@ public class Peripheral {
         @Override
         public void onCharacteristicWriteRequest(BluetoothDevice device, int requestId, BluetoothGattCharacteristic characteristic, boolean preparedWrite, boolean responseNeeded, int offset, byte[] value) {
             super.onCharacteristicWriteRequest(device, requestId, characteristic, preparedWrite, responseNeeded, offset, value);
-            String content = new String(value);
+            // the checksum halves are kept as they are, they aren't text
+            byte[] content = value.clone();
             Log.i(TAG, "value written to characteristic by connected device: " + new String(value) + "  " + device.getAddress());
 
             if(deviceMap.keySet().contains(device)) {
                 deviceMap.get(device).add(content);
                 deviceMap.put(device, deviceMap.get(device));
             } else {
-                ArrayList<String> list = new ArrayList<>();
+                ArrayList<byte[]> list = new ArrayList<>();
                 list.add(content);
                 deviceMap.put(device, list);
             }
 
             if(deviceMap.get(device).size() == 3) {
-                ArrayList<String> list = deviceMap.get(device);
-                databaseHandler.logContact(list.get(0), list.get(1) + list.get(2));
+                ArrayList<byte[]> list = deviceMap.get(device);
+                logContact(list.get(0), list.get(1), list.get(2));
                 deviceMap.remove(device);
             }
 
         }
 
+        /**
+         * logs the timestamp, written as digits, with the checksum put together from its halves.
+         */
+        private void logContact(byte[] date, byte[] checksum1, byte[] checksum2) {
+            long timestamp;
+            try {
+                timestamp = Long.parseLong(new String(date, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "no timestamp written by connected device, contact not logged.");
+                return;
+            }
+            byte[] checksum = Arrays.copyOf(checksum1, checksum1.length + checksum2.length);
+            System.arraycopy(checksum2, 0, checksum, checksum1.length, checksum2.length);
+            databaseHandler.logContact(timestamp, checksum);
+        }
+
         /**
          * Although it is currently not used by the app, it is overridden here
          * in an exemplary way for future adjustments and improvements.
@@ -0,0 +1,89 @@
+package com.hello.coronatrackingapp.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * Deletes the contacts that are older than the retention window with one delete
+ * of a range of the timestamp index, in one transaction, no matter in which order
+ * they were logged. Optionally gives the pages they took back to the file system
+ * afterwards with an incremental vacuum, so the database doesn't keep the size
+ * of the busiest two weeks.
+ */
+public class ContactRetention {
+    private static final String TAG = "at ContactRetention";
+
+    // how long contacts are kept by default, in milliseconds
+    public static final long WINDOW = 14 * DatabaseHandler.DAY;
+
+    private final long window;
+    private final boolean vacuum;
+
+    /**
+     * keeps contacts for 14 days and vacuums after deleting.
+     */
+    public ContactRetention() {
+        this(WINDOW, true);
+    }
+
+    /**
+     * @param window milliseconds contacts are kept
+     * @param vacuum true to give the free pages back after deleting
+     */
+    public ContactRetention(long window, boolean vacuum) {
+        this.window = window;
+        this.vacuum = vacuum;
+    }
+
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * deletes the contacts that are older than the window.
+     * @param database a writable database, not in a transaction
+     * @param now current time in milliseconds
+     * @return number of contacts deleted
+     */
+    public int purge(SQLiteDatabase database, long now) {
+        int deleted;
+        database.beginTransactionNonExclusive();
+        try {
+            deleted = database.delete("ContactLog", "timestamp < ?", new String[]{Long.toString(now - window)});
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Log.i(TAG, "deleted " + deleted + " contacts older than " + window / DatabaseHandler.DAY + " days.");
+        if (vacuum && deleted > 0) {
+            vacuum(database);
+        }
+        return deleted;
+    }
+
+    /**
+     * gives the free pages back, without moving the other pages around like a
+     * VACUUM does. A database that was created without incremental vacuum is
+     * vacuumed completely once to turn it on.
+     */
+    private void vacuum(SQLiteDatabase database) {
+        // 0 none, 1 full, 2 incremental
+        if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum;", null) != 2) {
+            Log.i(TAG, "turning on incremental vacuum.");
+            database.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+            database.execSQL("VACUUM;");
+            return;
+        }
+        long free = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count;", null);
+        // every step of the pragma gives back one page, counting the rows steps through all of them
+        Cursor pages = database.rawQuery("PRAGMA incremental_vacuum;", null);
+        try {
+            pages.getCount();
+        } finally {
+            pages.close();
+        }
+        Log.i(TAG, "gave back " + (free - DatabaseUtils.longForQuery(database, "PRAGMA freelist_count;", null)) + " free pages.");
+    }
+}
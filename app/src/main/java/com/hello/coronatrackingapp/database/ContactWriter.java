@@ -0,0 +1,273 @@
+package com.hello.coronatrackingapp.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the contacts the Peripheral logs in batches, so a GATT callback only
+ * has to queue its contact instead of opening the database, inserting one row
+ * and closing it again. A thread of its own writes the queued contacts in one
+ * transaction once there are enough of them or the first one waited long enough.
+ *
+ * Contacts are written in the order they were added. A batch that failed is
+ * written again before the contacts queued after it.
+ */
+public class ContactWriter {
+    private static final String TAG = "at ContactWriter";
+
+    // contacts written at once at the most, unless more were queued while writing
+    public static final int BATCH_SIZE = 64;
+    // milliseconds a contact waits for more to be written with it
+    public static final long MAX_DELAY = 2000;
+
+    /**
+     * Where the contacts go.
+     */
+    public interface Store {
+        /**
+         * writes all contacts of a batch or none of them.
+         * @param batch the contacts in the order they were logged, only valid during the call
+         * @throws Exception if nothing was written, the batch is written again later
+         */
+        void write(Batch batch) throws Exception;
+    }
+
+    /**
+     * Contacts waiting to be written. The arrays are kept for the next batch.
+     */
+    public static class Batch {
+        private long[] timestamps = new long[BATCH_SIZE];
+        private byte[][] checksums = new byte[BATCH_SIZE][];
+        private int size;
+
+        void add(long timestamp, byte[] checksum) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                checksums = Arrays.copyOf(checksums, size * 2);
+            }
+            timestamps[size] = timestamp;
+            checksums[size] = checksum;
+            size++;
+        }
+
+        void clear() {
+            Arrays.fill(checksums, 0, size, null);
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTimestamp(int i) {
+            return timestamps[i];
+        }
+
+        public byte[] getChecksum(int i) {
+            return checksums[i];
+        }
+    }
+
+    private final Store store;
+    private final int batchSize;
+    private final long maxDelay;
+
+    // guarded by this: the contacts waiting to be written
+    private Batch queued = new Batch();
+    private long firstQueued;
+    private boolean closed;
+    private Thread thread;
+
+    // guarded by writeLock: the batch being written, only one is written at a time
+    private final Object writeLock = new Object();
+    private Batch writing = new Batch();
+
+    /**
+     * writes into the ContactLog table of the database, BATCH_SIZE contacts at once
+     * and no later than MAX_DELAY after they were logged.
+     */
+    public ContactWriter(DBHelper helper) {
+        this(new DatabaseStore(helper), BATCH_SIZE, MAX_DELAY);
+    }
+
+    /**
+     * @param store where the contacts go
+     * @param batchSize number of queued contacts that are written right away
+     * @param maxDelay milliseconds a contact waits for more at the most
+     */
+    public ContactWriter(Store store, int batchSize, long maxDelay) {
+        this.store = store;
+        this.batchSize = batchSize;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * queues a contact for writing, returns without waiting for the database.
+     * @param timestamp milliseconds of the contact
+     * @param checksum the checksum as the other device sent it, not copied
+     */
+    public synchronized void add(long timestamp, byte[] checksum) {
+        if (closed) {
+            throw new IllegalStateException("contact writer closed");
+        }
+        queued.add(timestamp, checksum);
+        int count = queued.size();
+        if (count == 1) {
+            firstQueued = System.nanoTime();
+            if (thread == null) {
+                start();
+            }
+            notifyAll();
+        } else if (count == batchSize) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * writes every contact queued so far before returning, for reading the log
+     * with all contacts in it.
+     * @return false if writing failed, the contacts stay queued then
+     */
+    public boolean flush() {
+        synchronized (writeLock) {
+            // a batch that failed before goes first
+            if (writing.size() > 0 && !write()) {
+                return false;
+            }
+            synchronized (this) {
+                Batch empty = writing;
+                writing = queued;
+                queued = empty;
+            }
+            return writing.size() == 0 || write();
+        }
+    }
+
+    /**
+     * writes what is queued and stops the thread, no contacts can be added anymore.
+     */
+    public void close() {
+        Thread writer;
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            writer = thread;
+        }
+        if (writer != null) {
+            boolean interrupted = false;
+            while (writer.isAlive()) {
+                try {
+                    writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private boolean write() {
+        try {
+            store.write(writing);
+        } catch (Exception e) {
+            Log.e(TAG, "writing " + writing.size() + " contacts failed, trying again later.", e);
+            return false;
+        }
+        Log.i(TAG, "wrote " + writing.size() + " contacts into database.");
+        writing.clear();
+        return true;
+    }
+
+    private void start() {
+        thread = new Thread("contact-writer") {
+            @Override
+            public void run() {
+                try {
+                    boolean failed = false;
+                    while (awaitBatch(failed)) {
+                        failed = !flush();
+                    }
+                } catch (InterruptedException e) {
+                    Log.i(TAG, "contact writer interrupted.");
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * waits until a batch is full or its first contact waited long enough. After
+     * a batch failed, waits for the delay and then tries it again, even if no more
+     * contacts are queued: flush() took them from the queue.
+     * @param failed true if writing the last batch failed
+     * @return false if the writer was closed, what is left is written by close()
+     */
+    private synchronized boolean awaitBatch(boolean failed) throws InterruptedException {
+        if (failed) {
+            // don't try again right away
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+            long left;
+            while (!closed && (left = until - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return !closed;
+        }
+        while (!closed) {
+            int count = queued.size();
+            if (count == 0) {
+                wait();
+                continue;
+            }
+            long left = TimeUnit.MILLISECONDS.toNanos(maxDelay) - (System.nanoTime() - firstQueued);
+            if (count >= batchSize || left <= 0) {
+                return true;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return false;
+    }
+
+    /**
+     * Inserts the contacts with one compiled statement in one transaction on a
+     * connection that stays open between the batches.
+     */
+    static class DatabaseStore implements Store {
+        private final DBHelper helper;
+        private SQLiteDatabase database;
+        private SQLiteStatement insert;
+
+        DatabaseStore(DBHelper helper) {
+            this.helper = helper;
+        }
+
+        @Override
+        public void write(Batch batch) {
+            // the helper hands out the same connection until somebody closes it
+            SQLiteDatabase current = helper.getWritableDatabase();
+            if (current != database) {
+                database = current;
+                insert = current.compileStatement("INSERT INTO ContactLog (timestamp, checksum) VALUES (?, ?);");
+            }
+            // immediate, not exclusive: with write-ahead logging reads go on during it
+            current.beginTransactionNonExclusive();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    insert.bindLong(1, batch.getTimestamp(i));
+                    insert.bindBlob(2, batch.getChecksum(i));
+                    insert.executeInsert();
+                }
+                current.setTransactionSuccessful();
+            } finally {
+                current.endTransaction();
+            }
+        }
+    }
+}
@@ -3,25 +3,91 @@ package com.hello.coronatrackingapp.database;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 /**
  * Helper class to create and access tables in the SQLite database.
  */
 public class DBHelper extends SQLiteOpenHelper {
-    String createString;
+    private static final String TAG = "at DBHelper";
 
-    public DBHelper(Context context, String dbName, SQLiteDatabase.CursorFactory factory, int version, String createString) {
+    String[] createStrings;
+    // statements upgrading version i + 1 to version i + 2 at index i, null to just create missing tables
+    String[][] upgradeStrings;
+    // pragmas set when the database is opened, null and 0 keep the defaults
+    private String synchronous;
+    private int cacheSize;
+
+    /**
+     * @param createStrings statements creating the tables, run one after the other
+     */
+    public DBHelper(Context context, String dbName, SQLiteDatabase.CursorFactory factory, int version, String... createStrings) {
+        this(context, dbName, factory, version, createStrings, null);
+    }
+
+    /**
+     * @param createStrings statements creating the tables of the current version, run one after the other
+     * @param upgradeStrings for every version but the current one, the statements
+     *                       upgrading it to the next version. They are run one version
+     *                       after the other in the transaction of the upgrade
+     */
+    public DBHelper(Context context, String dbName, SQLiteDatabase.CursorFactory factory, int version,
+                    String[] createStrings, String[][] upgradeStrings) {
         super(context, dbName, factory, version);
-        this.createString = createString;
+        this.createStrings = createStrings;
+        this.upgradeStrings = upgradeStrings;
+    }
+
+    /**
+     * sets how often SQLite waits for the data to reach the disk, takes effect when
+     * the database is opened the next time. NORMAL is safe with write-ahead logging,
+     * only the last transactions can be lost if the device loses power.
+     * @param synchronous OFF, NORMAL, FULL or EXTRA, null for the default
+     */
+    public synchronized void setSynchronous(String synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * sets the size of the page cache, takes effect when the database is opened the next time.
+     * @param cacheSize pages if positive, KiB if negative like the pragma, 0 for the default
+     */
+    public synchronized void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * sets the pragmas on the connection that writes, which also reads in transactions.
+     * The connections that only read with write-ahead logging keep the defaults.
+     */
+    @Override
+    public synchronized void onConfigure(SQLiteDatabase db) {
+        if (synchronous != null) {
+            db.execSQL("PRAGMA synchronous = " + synchronous + ";");
+        }
+        if (cacheSize != 0) {
+            db.execSQL("PRAGMA cache_size = " + cacheSize + ";");
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        db.execSQL(createString);
+        for (String createString : createStrings) {
+            db.execSQL(createString);
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (upgradeStrings != null) {
+            for (int version = oldVersion; version < newVersion; version++) {
+                Log.i(TAG, "upgrading database from version " + version + " to " + (version + 1) + ".");
+                for (String upgradeString : upgradeStrings[version - 1]) {
+                    db.execSQL(upgradeString);
+                }
+            }
+        }
+        // tables that are new in this version, or in a database another helper created
         onCreate(db);
     }
 }
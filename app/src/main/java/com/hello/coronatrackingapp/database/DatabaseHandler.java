@@ -1,11 +1,13 @@
 package com.hello.coronatrackingapp.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
+import com.hello.coronatrackingapp.asyncoperations.ContactColumns;
+
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -22,107 +24,247 @@ public class DatabaseHandler {
     // number of milliseconds in one day
     public static final long DAY = 24 * 60 * 60 * 1000;
 
-    DBHelper helper;
+    // contacts read at once by scanContacts()
+    public static final int PAGE_SIZE = 1000;
+
+    // version of the Log database, see UPGRADES
+    static final int VERSION = 2;
+
+    // tables and indexes of the current version
+    static final String[] CREATE = {
+            "CREATE TABLE IF NOT EXISTS ContactLog "
+                    + "(_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "timestamp INTEGER NOT NULL, "
+                    + "checksum BLOB NOT NULL);",
+            "CREATE INDEX IF NOT EXISTS ContactLogTimestamp ON ContactLog (timestamp);"
+    };
+
+    /*
+     * Version 1 stored timestamps and checksums as TEXT without an index. The raw
+     * checksums can't be recovered from the strings, their UTF-8 bytes are kept and
+     * matched as they were logged (see ContactColumns). Those rows are deleted 14
+     * days after the upgrade anyway. The sequence of the ids is kept, so ids of
+     * deleted contacts aren't given out again.
+     */
+    static final String[][] UPGRADES = {
+            {
+                    "CREATE TABLE IF NOT EXISTS ContactLog "
+                            + "(_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                            + "timestamp TEXT NOT NULL, "
+                            + "checksum TEXT NOT NULL);",
+                    "ALTER TABLE ContactLog RENAME TO ContactLogVersion1;",
+                    CREATE[0],
+                    "INSERT INTO ContactLog (_id, timestamp, checksum) "
+                            + "SELECT _id, CAST(timestamp AS INTEGER), CAST(checksum AS BLOB) FROM ContactLogVersion1;",
+                    "DELETE FROM sqlite_sequence WHERE name = 'ContactLog';",
+                    "UPDATE sqlite_sequence SET name = 'ContactLog' WHERE name = 'ContactLogVersion1';",
+                    "DROP TABLE ContactLogVersion1;",
+                    CREATE[1]
+            }
+    };
+
+    // the Log database is shared by the whole app, see LogDatabase
+    private final Context context;
     // Cursor object to navigate around in the database
     Cursor cursor;
+    // decides which entries deleteOldEntries() deletes
+    private final ContactRetention retention;
 
     /**
      * Constructor creates a new table to store timestamp/checksum pairs
-     * if it doesn't exist yet.
+     * if it doesn't exist yet, or upgrades the one of an older version.
      * @param context activity context
      */
     public DatabaseHandler(Context context) {
-        String createString = "CREATE TABLE IF NOT EXISTS ContactLog "
-                + "(_id INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + "timestamp TEXT NOT NULL, "
-                + "checksum TEXT NOT NULL);";
-        helper = new DBHelper(context, "Log", null, 1, createString);
+        this(context, new ContactRetention());
+    }
+
+    /**
+     * @param context activity context
+     * @param retention how long entries are kept
+     */
+    public DatabaseHandler(Context context, ContactRetention retention) {
+        this.context = context.getApplicationContext();
+        this.retention = retention;
+    }
+
+    /**
+     * a new helper of the Log database, the app shares the one of LogDatabase.
+     * Every helper has to know how to upgrade it, whichever opens it first after
+     * an update does it.
+     * @param createStrings statements creating more tables in the database
+     */
+    static DBHelper newHelper(Context context, String... createStrings) {
+        String[] create = new String[CREATE.length + createStrings.length];
+        System.arraycopy(CREATE, 0, create, 0, CREATE.length);
+        System.arraycopy(createStrings, 0, create, CREATE.length, createStrings.length);
+        return new DBHelper(context, "Log", null, VERSION, create, UPGRADES);
     }
 
     /**
      * logs a recorded contact as a timestamp/checksum pair into the database.
-     * @param timestamp
-     * @param checksum
+     * Only queues the contact, it is written together with others shortly after
+     * (see ContactWriter), so it can be called from the GATT callbacks.
+     * @param timestamp milliseconds of the contact
+     * @param checksum the checksum as the other device sent it
      */
-    public void logContact(String timestamp, String checksum) {
+    public void logContact(long timestamp, byte[] checksum) {
         Log.i(TAG, "logged contact into database.");
-        SQLiteDatabase database = helper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put("timestamp", timestamp);
-        values.put("checksum", checksum);
-        database.insert("ContactLog", "", values);
-        values.clear();
-        database.close();
-    }
-
-    /**
-     * returns the timestamp or checksum column (based on a column identifier)
-     * as an ArrayList
-     * @param column identifier
-     * @return column as ArrayList
-     */
-    public ArrayList<String> getLogColumn(int column) {
-        ArrayList<String> list = new ArrayList<>();
-        SQLiteDatabase database = helper.getReadableDatabase();
-        cursor = database.rawQuery(("SELECT * FROM ContactLog;"), null);
-        cursor.moveToFirst();
-        int cursorCount = cursor.getCount();
-        for (int i = 0; i < cursorCount; i++) {
-            list.add(cursor.getString(column));
-            cursor.moveToNext();
-        }
-        cursor.close();
-        database.close();
-        return list;
+        LogDatabase.getWriter(context).add(timestamp, checksum);
     }
 
     /**
-     * For convenience. Not actually used in the final version of the app.
-     * @param column
-     * @param row
-     * @return a database entry
+     * writes the contacts that are still queued, for reading or changing the log
+     * with all contacts in it.
      */
-    public String getEntry(int column, int row) {
-        SQLiteDatabase database = helper.getReadableDatabase();
-        cursor = database.rawQuery(("SELECT * FROM ContactLog;"), null);
-        cursor.moveToFirst();
-        cursor.moveToPosition(row);
+    private void flushContacts() {
+        LogDatabase.getWriter(context).flush();
+    }
 
-        return cursor.getString(column);
+    /**
+     * the database of the whole app. Reads on it run next to the writes, it must not be closed.
+     */
+    private SQLiteDatabase getDatabase() {
+        return LogDatabase.getHelper(context).getWritableDatabase();
     }
 
     /**
-     * deletes entries that are older than 14 days. Is called by
-     * @see com.hello.coronatrackingapp.screens.StartScreen
-     * in a TimerTask (10 seconds after starting the app and once a
-     * day after that).
+     * Told about the contacts of a scan one after the other, in the order they were logged.
      */
-    public void deleteOldEntries() {
-        SQLiteDatabase database = helper.getReadableDatabase();
-        cursor = database.rawQuery(("SELECT * FROM ContactLog;"), null);
-        cursor.moveToFirst();
+    public interface ContactCallback {
+        /**
+         * @param id id of the contact in the log
+         * @param timestamp milliseconds of the contact
+         * @param checksum the checksum as it was logged
+         * @return false to stop the scan
+         */
+        boolean onContact(long id, long timestamp, byte[] checksum);
+    }
 
-        String s = "";
-        int i = 0;
+    /**
+     * reads the whole log into columns of primitives, in the order the contacts were
+     * logged, for evaluating the risk without a string per timestamp and checksum.
+     * It is read page by page, so there is never more than a page of rows in a cursor.
+     * @return ids, timestamps and checksums of the contacts
+     */
+    public ContactColumns getContactColumns() {
+        final ContactColumns columns = new ContactColumns(getCount());
+        scanContacts(0, new ContactCallback() {
+            @Override
+            public boolean onContact(long id, long timestamp, byte[] checksum) {
+                // 32 bytes as sent, or the UTF-8 bytes of a checksum logged by version 1
+                columns.add(id, timestamp, checksum);
+                return true;
+            }
+        });
+        return columns;
+    }
+
+    /**
+     * reads the contacts logged after a contact, one page of them.
+     * @param afterId id of the last contact of the page before, 0 for the first page
+     * @param limit contacts in a page at the most
+     * @return the contacts of the page, fewer than the limit if it is the last one
+     */
+    public ContactColumns getContactPage(long afterId, int limit) {
+        ContactColumns page = new ContactColumns(limit);
+        flushContacts();
+        SQLiteDatabase database = getDatabase();
+        Cursor rows = queryPage(database, afterId, limit);
+        try {
+            while (rows.moveToNext()) {
+                page.add(rows.getLong(0), rows.getLong(1), rows.getBlob(2));
+            }
+        } finally {
+            rows.close();
+        }
+        return page;
+    }
+
+    /**
+     * hands the contacts logged after a contact to a callback one after the other,
+     * without keeping more than a page (PAGE_SIZE) of them in memory. Every page
+     * continues after the id the last one ended with, so contacts that are logged
+     * during the scan are scanned as well and deleted ones don't shift the pages.
+     * @param afterId id of a contact, 0 for all of them
+     * @param callback told about the contacts
+     * @return id of the last contact scanned, afterId if there was none
+     */
+    public long scanContacts(long afterId, ContactCallback callback) {
+        flushContacts();
+        SQLiteDatabase database = getDatabase();
+        long last = afterId;
+        while (true) {
+            int count = 0;
+            Cursor rows = queryPage(database, last, PAGE_SIZE);
+            try {
+                while (rows.moveToNext()) {
+                    last = rows.getLong(0);
+                    count++;
+                    if (!callback.onContact(last, rows.getLong(1), rows.getBlob(2))) {
+                        return last;
+                    }
+                }
+            } finally {
+                rows.close();
+            }
+            if (count < PAGE_SIZE) {
+                return last;
+            }
+        }
+    }
+
+    /**
+     * a page of the log from the primary key, no matter how far into the log it is.
+     */
+    private static Cursor queryPage(SQLiteDatabase database, long afterId, int limit) {
+        return database.rawQuery("SELECT _id, timestamp, checksum FROM ContactLog "
+                + "WHERE _id > ? ORDER BY _id LIMIT " + limit + ";", new String[]{Long.toString(afterId)});
+    }
 
-        while(cursor.getCount()!= 0 && isObsolete(s = cursor.getString(1))) {
-            database.delete("ContactLog", "timestamp=" + s, null);
-            cursor.moveToNext();
-            i++;
+    /**
+     * For convenience. Not actually used in the final version of the app.
+     * @param column
+     * @param id id of the contact
+     * @return a database entry, null if there is no contact with the id
+     */
+    public String getEntry(int column, long id) {
+        flushContacts();
+        SQLiteDatabase database = getDatabase();
+        cursor = database.rawQuery("SELECT timestamp, checksum FROM ContactLog WHERE _id = ?;",
+                new String[]{Long.toString(id)});
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return column == CHECKSUMS ? toHex(cursor.getBlob(1)) : cursor.getString(0);
+        } finally {
+            cursor.close();
         }
-        Log.i(TAG, "deleted " + i + " entries from test database.");
+    }
 
-        cursor.close();
-        database.close();
+    /**
+     * @return a checksum in hex, the way it is shown
+     */
+    public static String toHex(byte[] checksum) {
+        StringBuilder hex = new StringBuilder(checksum.length * 2);
+        for (byte b : checksum) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
     }
 
     /**
-     * determines if a timestamp is older than 14 days.
-     * @param timestamp
-     * @return true if older than 14 days, false else.
+     * deletes entries that are older than the retention window, 14 days unless
+     * the handler was given another one. Is called by
+     * @see com.hello.coronatrackingapp.screens.StartScreen
+     * in a TimerTask (10 seconds after starting the app and once a
+     * day after that).
+     * @return number of entries deleted
      */
-    private boolean isObsolete(String timestamp) {
-        return Long.parseLong(timestamp) < new Date().getTime() - (DAY * 14);
+    public int deleteOldEntries() {
+        flushContacts();
+        return retention.purge(getDatabase(), new Date().getTime());
     }
 
     /**
@@ -132,9 +274,8 @@ public class DatabaseHandler {
      */
     public void clearDatabase() {
         Log.i(TAG, "database cleared");
-        SQLiteDatabase database = helper.getWritableDatabase();
-        database.delete("ContactLog", null, null);
-        database.close();
+        flushContacts();
+        getDatabase().delete("ContactLog", null, null);
     }
 
     /**
@@ -144,12 +285,9 @@ public class DatabaseHandler {
      * @return number of database entries
      */
     public int getCount() {
-        SQLiteDatabase database = helper.getReadableDatabase();
-        cursor = database.rawQuery(("SELECT * FROM ContactLog;"), null);
-        int count = cursor.getCount();
+        flushContacts();
+        int count = (int) DatabaseUtils.queryNumEntries(getDatabase(), "ContactLog");
         Log.i(TAG, "number of entries: " + count);
-        cursor.close();
-        database.close();
         return count;
     }
 }
@@ -0,0 +1,123 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.hello.coronatrackingapp.asyncoperations.EvaluationState;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the state of the last risk evaluation (see
+ * @see com.hello.coronatrackingapp.asyncoperations.IncrementalRiskEvaluator)
+ * between two evaluations, so the next one only has to evaluate what changed.
+ */
+public class EvaluationStateHandler {
+    private static final String TAG = "at EvaluationStateHandler";
+
+    DBHelper helper;
+
+    /**
+     * Constructor creates the tables to store the state if they don't exist yet:
+     * the cursors in one row and the contacts every key matched. Version 1 also
+     * stored the exposure of every key and the timestamps as text, it is dropped,
+     * the next evaluation starts from scratch.
+     * @param context activity context
+     */
+    public EvaluationStateHandler(Context context) {
+        String createCursors = "CREATE TABLE IF NOT EXISTS EvaluationCursors "
+                + "(_id INTEGER PRIMARY KEY, "
+                + "key_cursor INTEGER NOT NULL, "
+                + "cursor_key TEXT, "
+                + "contact_cursor INTEGER NOT NULL);";
+        String createMatches = "CREATE TABLE IF NOT EXISTS KeyMatches "
+                + "(key_id INTEGER NOT NULL, "
+                + "contact_id INTEGER NOT NULL, "
+                + "timestamp INTEGER NOT NULL);";
+        String[][] upgrades = {
+                {"DROP TABLE IF EXISTS EvaluationCursors;", "DROP TABLE IF EXISTS KeyExposures;",
+                        "DROP TABLE IF EXISTS KeyMatches;"}
+        };
+        helper = new DBHelper(context, "Evaluation", null, 2, new String[]{createCursors, createMatches}, upgrades);
+    }
+
+    /**
+     * reads the state stored by the last evaluation.
+     * @return the state, empty if there was no evaluation yet
+     */
+    public EvaluationState load() {
+        EvaluationState state = new EvaluationState();
+        SQLiteDatabase database = helper.getReadableDatabase();
+        try {
+            Cursor rows = database.rawQuery("SELECT key_cursor, cursor_key, contact_cursor FROM EvaluationCursors;", null);
+            try {
+                if (!rows.moveToNext()) {
+                    return state;
+                }
+                state.setCursors(rows.getLong(0), rows.getString(1), rows.getLong(2));
+            } finally {
+                rows.close();
+            }
+
+            HashMap<Long, EvaluationState.KeyMatches> matches = state.getMatches();
+            // rowid order is the order the contacts were added in
+            rows = database.rawQuery("SELECT key_id, contact_id, timestamp FROM KeyMatches ORDER BY rowid;", null);
+            try {
+                while (rows.moveToNext()) {
+                    EvaluationState.KeyMatches keyMatches = matches.get(rows.getLong(0));
+                    if (keyMatches == null) {
+                        keyMatches = new EvaluationState.KeyMatches();
+                        matches.put(rows.getLong(0), keyMatches);
+                    }
+                    keyMatches.add(rows.getLong(1), rows.getLong(2));
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            database.close();
+        }
+        Log.i(TAG, "loaded the matches of " + state.getMatches().size() + " keys.");
+        return state;
+    }
+
+    /**
+     * replaces the stored state in one transaction, so the cursors always fit the matches.
+     * @param state the state after an evaluation
+     */
+    public void save(EvaluationState state) {
+        SQLiteDatabase database = helper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            database.delete("EvaluationCursors", null, null);
+            database.delete("KeyMatches", null, null);
+
+            ContentValues values = new ContentValues();
+            values.put("_id", 1);
+            values.put("key_cursor", state.getKeyCursor());
+            values.put("cursor_key", state.getCursorKey());
+            values.put("contact_cursor", state.getContactCursor());
+            database.insert("EvaluationCursors", null, values);
+
+            for (Map.Entry<Long, EvaluationState.KeyMatches> entry : state.getMatches().entrySet()) {
+                EvaluationState.KeyMatches keyMatches = entry.getValue();
+                for (int i = 0; i < keyMatches.size(); i++) {
+                    values.clear();
+                    values.put("key_id", entry.getKey());
+                    values.put("contact_id", keyMatches.getContactId(i));
+                    values.put("timestamp", keyMatches.getTimestamp(i));
+                    database.insert("KeyMatches", null, values);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            database.close();
+        }
+        Log.i(TAG, "saved the matches of " + state.getMatches().size() + " keys.");
+    }
+}
@@ -0,0 +1,168 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.hello.coronatrackingapp.asyncoperations.IncrementalRiskEvaluator;
+
+import java.util.ArrayList;
+
+/**
+ * This class keeps the keys of infected users downloaded from the main server,
+ * so only keys that were added on the server since the last download need to be
+ * fetched. Every key is stored with its sequence number on the server, the highest
+ * one being the cursor that is sent with the next request.
+ *
+ * The database uses write-ahead logging: a download stores its keys in a transaction
+ * that stays open while they arrive, and the evaluation and other handlers keep
+ * reading the keys as they were before it, instead of waiting for the network.
+ */
+public class InfectedKeyHandler implements IncrementalRiskEvaluator.KeySource {
+    private static final String TAG = "at InfectedKeyHandler";
+
+    DBHelper helper;
+
+    /**
+     * Constructor creates a new table to store the keys if it doesn't exist yet.
+     * @param context activity context
+     */
+    public InfectedKeyHandler(Context context) {
+        String createString = "CREATE TABLE IF NOT EXISTS InfectedKeys "
+                + "(_id INTEGER PRIMARY KEY, "
+                + "key TEXT NOT NULL);";
+        helper = new DBHelper(context, "Keys", null, 1, createString);
+        helper.setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * returns the sequence number of the last key downloaded so far.
+     * @return the cursor, 0 if there are no keys yet
+     */
+    @Override
+    public long getCursor() {
+        SQLiteDatabase database = helper.getReadableDatabase();
+        long cursor = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MAX(_id), 0) FROM InfectedKeys;", null);
+        database.close();
+        return cursor;
+    }
+
+    /**
+     * opens a transaction to store keys while they are downloaded.
+     * @return the writer, has to be closed
+     */
+    public KeyWriter openWriter() {
+        return new KeyWriter(helper.getWritableDatabase());
+    }
+
+    /**
+     * Stores the keys of one download in one transaction, one key at a time. Nothing
+     * is stored unless commit() is called before close().
+     */
+    public static class KeyWriter {
+        private final SQLiteDatabase database;
+        private final ContentValues values = new ContentValues();
+        private long sequence;
+
+        private KeyWriter(SQLiteDatabase database) {
+            this.database = database;
+            // only blocks other writers, readers see the keys committed before
+            database.beginTransactionNonExclusive();
+        }
+
+        /**
+         * @param reset true if the server didn't know the cursor and sends all keys instead
+         * @param cursor sequence number of the last of the keys
+         * @param count the number of keys that follow
+         */
+        public void begin(boolean reset, long cursor, int count) {
+            Log.i(TAG, "storing " + count + " new keys up to " + cursor + (reset ? " after reset." : "."));
+            if (reset) {
+                database.delete("InfectedKeys", null, null);
+            }
+            sequence = cursor - count;
+        }
+
+        /**
+         * @param key the next key, the keys get the sequence numbers up to the cursor in the order they are added
+         */
+        public void add(String key) {
+            values.put("_id", ++sequence);
+            values.put("key", key);
+            database.insertWithOnConflict("InfectedKeys", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+
+        public void commit() {
+            database.setTransactionSuccessful();
+        }
+
+        public void close() {
+            database.endTransaction();
+            database.close();
+        }
+    }
+
+    /**
+     * returns all keys downloaded so far.
+     * @return the keys in the order of their sequence numbers
+     */
+    public ArrayList<String> getKeys() {
+        ArrayList<String> list = new ArrayList<>();
+        SQLiteDatabase database = helper.getReadableDatabase();
+        Cursor cursor = database.rawQuery("SELECT key FROM InfectedKeys ORDER BY _id;", null);
+        while (cursor.moveToNext()) {
+            list.add(cursor.getString(0));
+        }
+        cursor.close();
+        database.close();
+        return list;
+    }
+
+    /**
+     * returns the key with a sequence number.
+     * @param sequence sequence number of the key
+     * @return the key, null if there is none with that number
+     */
+    @Override
+    public String getKey(long sequence) {
+        SQLiteDatabase database = helper.getReadableDatabase();
+        try {
+            Cursor rows = database.rawQuery("SELECT key FROM InfectedKeys WHERE _id = ?;",
+                    new String[]{Long.toString(sequence)});
+            try {
+                return rows.moveToNext() ? rows.getString(0) : null;
+            } finally {
+                rows.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * passes the keys in a range of sequence numbers on one at a time, without loading all of them.
+     * @param from only keys after this sequence number are read
+     * @param to only keys up to this sequence number are read
+     * @param consumer receives the keys with their sequence numbers in that order
+     */
+    @Override
+    public void readKeys(long from, long to, IncrementalRiskEvaluator.SequencedKeyConsumer consumer) {
+        SQLiteDatabase database = helper.getReadableDatabase();
+        try {
+            Cursor rows = database.rawQuery("SELECT _id, key FROM InfectedKeys WHERE _id > ? AND _id <= ? ORDER BY _id;",
+                    new String[]{Long.toString(from), Long.toString(to)});
+            try {
+                while (rows.moveToNext()) {
+                    consumer.accept(rows.getLong(0), rows.getString(1));
+                }
+            } finally {
+                rows.close();
+            }
+        } finally {
+            database.close();
+        }
+    }
+}
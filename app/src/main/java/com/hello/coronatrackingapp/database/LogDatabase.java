@@ -0,0 +1,91 @@
+package com.hello.coronatrackingapp.database;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Holds the one helper of the Log database for the whole app, so every handler,
+ * the ContactWriter and the risk evaluation share one connection pool instead of
+ * opening and closing the database around every operation.
+ *
+ * The database uses write-ahead logging: the contacts are written on the one
+ * connection that writes, while reads (the evaluation, the LogScreen) run on
+ * connections of their own at the same time and see the log as it was when they
+ * started, instead of waiting for the writes to be committed. Nobody closes the
+ * database it hands out, it stays open until close() is called.
+ */
+public final class LogDatabase {
+    private static final String TAG = "at LogDatabase";
+
+    // commits don't wait for the disk, only for the log; safe with write-ahead logging
+    public static final String SYNCHRONOUS = "NORMAL";
+    // KiB of page cache for the connection that writes, the timestamp index and a page of the log fit
+    public static final int CACHE_SIZE = -4096;
+
+    private static String synchronous = SYNCHRONOUS;
+    private static int cacheSize = CACHE_SIZE;
+
+    private static DBHelper helper;
+    // writes the logged contacts for every handler of the app
+    private static ContactWriter writer;
+
+    private LogDatabase() {
+    }
+
+    /**
+     * sets the pragmas the database is opened with. Takes effect the next time
+     * it is opened, so before the first getHelper() or after close().
+     * @param synchronous see DBHelper.setSynchronous()
+     * @param cacheSize see DBHelper.setCacheSize()
+     */
+    public static synchronized void setPragmas(String synchronous, int cacheSize) {
+        LogDatabase.synchronous = synchronous;
+        LogDatabase.cacheSize = cacheSize;
+        if (helper != null) {
+            helper.setSynchronous(synchronous);
+            helper.setCacheSize(cacheSize);
+        }
+    }
+
+    /**
+     * @param context any context, the helper keeps the one of the application
+     * @return the helper of the Log database, the same one for everybody. The
+     * databases it returns must not be closed.
+     */
+    public static synchronized DBHelper getHelper(Context context) {
+        if (helper == null) {
+            helper = DatabaseHandler.newHelper(context.getApplicationContext());
+            helper.setWriteAheadLoggingEnabled(true);
+            helper.setSynchronous(synchronous);
+            helper.setCacheSize(cacheSize);
+        }
+        return helper;
+    }
+
+    /**
+     * the writer is shared by all handlers, so whoever reads the log can write the
+     * contacts queued by the handler of the Peripheral first.
+     */
+    static synchronized ContactWriter getWriter(Context context) {
+        if (writer == null) {
+            writer = new ContactWriter(getHelper(context));
+        }
+        return writer;
+    }
+
+    /**
+     * writes the queued contacts and closes the database. The next getHelper()
+     * opens it again.
+     */
+    public static synchronized void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (helper != null) {
+            helper.close();
+            helper = null;
+            Log.i(TAG, "closed the Log database.");
+        }
+    }
+}
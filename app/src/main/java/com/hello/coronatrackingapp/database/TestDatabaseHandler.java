@@ -24,6 +24,7 @@ public class TestDatabaseHandler {
     // number of milliseconds in one day
     public static final long DAY = 24 * 60 * 60 * 1000;
 
+    // the Log database the app shares, see LogDatabase
     DBHelper testHelper;
     // Cursor object to navigate around in the database
     Cursor cursor;
@@ -38,9 +39,9 @@ public class TestDatabaseHandler {
                 + "(_id INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + "timestamptest TEXT NOT NULL, "
                 + "checksumtest TEXT NOT NULL);";
-        testHelper = new DBHelper(context, "Log", null, 1, createStringTest);
-        SQLiteDatabase database = testHelper.getWritableDatabase();
-        testHelper.onCreate(database);
+        // on the same database as the log, it must not be closed
+        testHelper = LogDatabase.getHelper(context);
+        testHelper.getWritableDatabase().execSQL(createStringTest);
     }
 
     /**
@@ -60,7 +61,6 @@ public class TestDatabaseHandler {
         values.put("checksumtest", "no value");
         database.insert("TestContactLog", "", values);
         values.clear();
-        database.close();
 
         return date;
     }
@@ -82,7 +82,6 @@ public class TestDatabaseHandler {
             cursor.moveToNext();
         }
         cursor.close();
-        database.close();
         return list;
     }
 
@@ -93,7 +92,6 @@ public class TestDatabaseHandler {
         Log.i(TAG, "test database cleared");
         SQLiteDatabase database = testHelper.getWritableDatabase();
         database.delete("TestContactLog", null, null);
-        database.close();
     }
 
     /**
@@ -114,7 +112,6 @@ public class TestDatabaseHandler {
         Log.i(TAG, "deleted " + i + " entries from test database.");
 
         cursor.close();
-        database.close();
     }
 
     /**
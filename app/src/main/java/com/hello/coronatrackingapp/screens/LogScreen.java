@@ -6,17 +6,15 @@ import androidx.core.app.ActivityCompat;
 
 import com.hello.coronatrackingapp.R;
 import com.hello.coronatrackingapp.asyncoperations.ClientThread;
+import com.hello.coronatrackingapp.asyncoperations.EvaluationService;
 import com.hello.coronatrackingapp.asyncoperations.RiskEvaluationThread;
 import com.hello.coronatrackingapp.database.DatabaseHandler;
 import com.hello.coronatrackingapp.blecommunication.TrackingHandler;
 import com.hello.coronatrackingapp.database.TestDatabaseHandler;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
@@ -28,6 +26,7 @@ import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.Toast;
 
+import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -48,7 +47,6 @@ public class LogScreen extends AppCompatActivity {
 
     private TrackingHandler trackingHandler;
 
-    BroadcastReceiver broadcastReceiverEvaluationDone;
     DatabaseHandler handler;
     TestDatabaseHandler testHandler;
 
@@ -249,19 +247,47 @@ public class LogScreen extends AppCompatActivity {
                     public void onClick(DialogInterface dialogInterface, int i) {
                         Log.i(TAG, "sending infected information with password to server.");
                         String msg = password.getText().toString() + preferences.getString("ID", "default") + "\n";
-                        new ClientThread(msg).start();
-                        Toast.makeText(context, "key uploaded", Toast.LENGTH_SHORT).show();
+                        reportInfection(msg, "key uploaded");
                     }
                 }).show();
     }
 
+    /**
+     * sends the report and tells the user how it ended, once the server answered.
+     * @param msg the password followed by the ID
+     * @param confirmedText shown if the server stored the ID
+     */
+    private void reportInfection(String msg, final String confirmedText) {
+        new ClientThread(msg, new ClientThread.ReportListener() {
+            @Override
+            public void onReported(boolean confirmed) {
+                showReportResult(confirmed ? confirmedText : "report refused, please check the password");
+            }
+
+            @Override
+            public void onReportFailed(IOException e) {
+                showReportResult("report failed, please try again later");
+            }
+        }).start();
+    }
+
+    private void showReportResult(final String text) {
+        // the result arrives on the thread of the report
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     /**
      * @see DatabaseHandler will fetch the whole log of recorded contacts
      * (pairs of timestamps and checksums).
      */
     private void onTestDownloadKeys() {
         Toast.makeText(this, "keys downloaded", Toast.LENGTH_SHORT).show();
-        Thread clientThread = new ClientThread("requestlist");
+        Thread clientThread = new ClientThread("requestlist", this);
         clientThread.start();
     }
 
@@ -280,16 +306,22 @@ public class LogScreen extends AppCompatActivity {
      */
     private void onPrintDatabase() {
         Toast.makeText(this, "printed database to log", Toast.LENGTH_SHORT).show();
-        ArrayList<String> timestamps = handler.getLogColumn(DatabaseHandler.TIMESTAMPS);
-        ArrayList<String> checksums = handler.getLogColumn(DatabaseHandler.CHECKSUMS);
-        for (int i = 0; i < timestamps.size(); i++) {
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(new Date(Long.parseLong(timestamps.get(i))));
-            String dateString = calendar.getTime().toString();
+        // a page of the log in memory at a time, no matter how long it is
+        handler.scanContacts(0, new DatabaseHandler.ContactCallback() {
+            int i = 0;
 
-            Log.i(i + ".", timestamps.get(i) + " = " + dateString);
-            Log.i(i + ".", checksums.get(i));
-        }
+            @Override
+            public boolean onContact(long id, long timestamp, byte[] checksum) {
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(new Date(timestamp));
+                String dateString = calendar.getTime().toString();
+
+                Log.i(i + ".", timestamp + " = " + dateString);
+                Log.i(i + ".", DatabaseHandler.toHex(checksum));
+                i++;
+                return true;
+            }
+        });
     }
 
     /**
@@ -388,12 +420,11 @@ public class LogScreen extends AppCompatActivity {
     }
 
     /**
-     * @see DatabaseHandler will fetch the whole log of recorded contacts
-     * (pairs of timestamps and checksums). Then
-     * @see ClientThread will fetch the list of infected users from the main server.
-     * Then a BroadcastReceiver will be set up that receives the evaluation results when
-     * @see RiskEvaluationThread is done evaluating the users risk of infection and
-     * displays an appropriate notification.
+     * Asks the evaluation service (see RiskEvaluationThread.getService()) for an evaluation
+     * of the users risk of infection, and displays an appropriate notification when it is
+     * done. The service fetches the keys that are new on the main server, then only
+     * matches what was added since the last evaluation. If an evaluation is running
+     * already, its result is shown.
      *
      * The same is done in the app in a given time interval, but there will be more
      * information regarding the results of the evaluation both logged in the output
@@ -402,53 +433,51 @@ public class LogScreen extends AppCompatActivity {
     private void onRiskEvaluation() {
         Toast.makeText(this, "evaluating risk", Toast.LENGTH_SHORT).show();
 
-        ArrayList<String> timestamps = handler.getLogColumn(DatabaseHandler.TIMESTAMPS);
-        ArrayList<String> checksums = handler.getLogColumn(DatabaseHandler.CHECKSUMS);
-
-        Thread clientThread = new ClientThread("requestlist");
-        clientThread.start();
-        try {
-            clientThread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        ArrayList<String> infectedList = ((ClientThread) clientThread).getInfectedList();
-
-        broadcastReceiverEvaluationDone = new BroadcastReceiver() {
+        RiskEvaluationThread.getService(this).evaluate(new EvaluationService.Listener<Bundle>() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                if ("com.hello.coronatrackingapp.EVALUATION_DONE".equals(intent.getAction())) {
-                    Bundle bundle= intent.getBundleExtra("com.hello.coronatrackingapp.COUNT");
-                    int contactCount = handler.getCount();
-                    int infectedContactCount = bundle.getInt("contactCounter");
-                    int intervalsExposed = bundle.getInt("intervalsExposed");
-                    int secondsExposed = bundle.getInt("secondsExposed");
-
-                    Log.i(TAG, "Total of contacts: " + contactCount);
-                    Log.i(TAG, "Contacts with infected people: " + infectedContactCount);
-                    Log.i(TAG, "Seconds exposed: " + secondsExposed);
-                    Log.i(TAG, "Minutes exposed: " + (intervalsExposed * RiskEvaluationThread.EXPOSURE_INTERVAL) / 60);
-                    Log.i(TAG, "Risk at: " + intervalsExposed + " %.");
-
-                    new AlertDialog.Builder(context)
-                            .setTitle("Contact count")
-                            .setMessage("Total of contacts: " + contactCount
-                                    + "\n\nCritical contacts: " + infectedContactCount + " "
-                                    + "\n\nSeconds exposed: " + secondsExposed
-                                    + "\n\nMinutes exposed: " + (intervalsExposed * RiskEvaluationThread.EXPOSURE_INTERVAL) / 60
-                                    + "\n\nRisk at: " + intervalsExposed + " %")
-                            .setCancelable(true)
-                            .setPositiveButton("Ok", null)
-                            .show();
-                }
-                context.unregisterReceiver(broadcastReceiverEvaluationDone);
+            public void onResult(final Bundle bundle) {
+                // the result arrives on the thread of the evaluation
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showEvaluation(bundle);
+                    }
+                });
             }
-        };
 
-        IntentFilter filter = new IntentFilter("com.hello.coronatrackingapp.EVALUATION_DONE");
-        registerReceiver(broadcastReceiverEvaluationDone, filter);
+            @Override
+            public void onFailure(Exception e) {
+                Log.i(TAG, "risk evaluation failed. " + e);
+            }
+        });
+    }
 
-        Thread riskEvaluationThread = new RiskEvaluationThread(timestamps, checksums, infectedList, this);
-        riskEvaluationThread.start();
+    /**
+     * logs and shows the result of an evaluation.
+     * @param bundle the result, see RiskEvaluationThread
+     */
+    private void showEvaluation(Bundle bundle) {
+        int contactCount = handler.getCount();
+        int infectedContactCount = bundle.getInt("contactCounter");
+        int intervalsExposed = bundle.getInt("intervalsExposed");
+        int secondsExposed = bundle.getInt("secondsExposed");
+
+        Log.i(TAG, "Total of contacts: " + contactCount);
+        Log.i(TAG, "Contacts with infected people: " + infectedContactCount);
+        Log.i(TAG, "Seconds exposed: " + secondsExposed);
+        Log.i(TAG, "Seconds exposed per day, today first: " + Arrays.toString(bundle.getIntArray("secondsExposedPerDay")));
+        Log.i(TAG, "Minutes exposed: " + (intervalsExposed * RiskEvaluationThread.EXPOSURE_INTERVAL) / 60);
+        Log.i(TAG, "Risk at: " + intervalsExposed + " %.");
+
+        new AlertDialog.Builder(context)
+                .setTitle("Contact count")
+                .setMessage("Total of contacts: " + contactCount
+                        + "\n\nCritical contacts: " + infectedContactCount + " "
+                        + "\n\nSeconds exposed: " + secondsExposed
+                        + "\n\nMinutes exposed: " + (intervalsExposed * RiskEvaluationThread.EXPOSURE_INTERVAL) / 60
+                        + "\n\nRisk at: " + intervalsExposed + " %")
+                .setCancelable(true)
+                .setPositiveButton("Ok", null)
+                .show();
     }
 }
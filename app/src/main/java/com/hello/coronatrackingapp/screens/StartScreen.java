@@ -6,11 +6,9 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import android.Manifest;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.ColorStateList;
 import android.os.Bundle;
@@ -27,11 +25,12 @@ import android.widget.Toast;
 
 import com.hello.coronatrackingapp.R;
 import com.hello.coronatrackingapp.asyncoperations.ClientThread;
+import com.hello.coronatrackingapp.asyncoperations.EvaluationService;
 import com.hello.coronatrackingapp.asyncoperations.RiskEvaluationThread;
 import com.hello.coronatrackingapp.database.DatabaseHandler;
 import com.hello.coronatrackingapp.blecommunication.TrackingHandler;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
@@ -51,7 +50,6 @@ public class StartScreen extends AppCompatActivity {
     Switch recordSwitch;
     ProgressBar riskProgress;
 
-    BroadcastReceiver broadcastReceiverEvaluationDone;
     DatabaseHandler handler;
 
     SharedPreferences preferences;
@@ -82,7 +80,10 @@ public class StartScreen extends AppCompatActivity {
         TimerTask timerTaskDatabase = new TimerTask() {
             @Override
             public void run() {
-                handler.deleteOldEntries();
+                // the risk shown still counts the deleted contacts, and so would an evaluation that read them
+                if (handler.deleteOldEntries() > 0) {
+                    RiskEvaluationThread.getService(StartScreen.this).reevaluate(riskListener());
+                }
             }
         };
         timer = new Timer();
@@ -177,12 +178,40 @@ public class StartScreen extends AppCompatActivity {
                     public void onClick(DialogInterface dialogInterface, int i) {
                         Log.i(TAG, "sending infected information with password to server.");
                         String msg = password.getText().toString() + preferences.getString("ID", "default") + "\n";
-                        new ClientThread(msg).start();
-                        Toast.makeText(context, "you reported your infection", Toast.LENGTH_SHORT).show();
+                        reportInfection(msg, "you reported your infection");
                     }
                 }).show();
     }
 
+    /**
+     * sends the report and tells the user how it ended, once the server answered.
+     * @param msg the password followed by the ID
+     * @param confirmedText shown if the server stored the ID
+     */
+    private void reportInfection(String msg, final String confirmedText) {
+        new ClientThread(msg, new ClientThread.ReportListener() {
+            @Override
+            public void onReported(boolean confirmed) {
+                showReportResult(confirmed ? confirmedText : "report refused, please check the password");
+            }
+
+            @Override
+            public void onReportFailed(IOException e) {
+                showReportResult("report failed, please try again later");
+            }
+        }).start();
+    }
+
+    private void showReportResult(final String text) {
+        // the result arrives on the thread of the report
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
     /**
      * see description below.
      *
@@ -197,61 +226,62 @@ public class StartScreen extends AppCompatActivity {
      * up in the onCreate() method of this activity), but also, when the user
      * presses the corresponding button.
      *
-     * @see DatabaseHandler will fetch the whole log of recorded contacts
-     * (pairs of timestamps and checksums). Then
-     * @see ClientThread will fetch the list of infected users from the main server.
-     * Then a BroadcastReceiver will be set up that receives the evaluation results when
-     * @see RiskEvaluationThread is done evaluating the users risk of infection and
-     * displays an appropriate notification.
+     * Asks the evaluation service (see RiskEvaluationThread.getService()) for an evaluation
+     * of the users risk of infection, and displays an appropriate notification when it is done. The
+     * service fetches the keys that are new on the main server, then only matches what
+     * was added since the last evaluation. If an evaluation is running already, for
+     * example when the timer goes off while the user waits for one, its result is shown.
      */
     private void evaluateRisk() {
-        ArrayList<String> timestamps = handler.getLogColumn(DatabaseHandler.TIMESTAMPS);
-        ArrayList<String> checksums = handler.getLogColumn(DatabaseHandler.CHECKSUMS);
-
-        Thread clientThread = new ClientThread("requestlist");
-        clientThread.start();
-        try {
-            clientThread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        ArrayList<String> infectedList = ((ClientThread) clientThread).getInfectedList();
+        RiskEvaluationThread.getService(this).evaluate(riskListener());
+    }
 
-        // Broadcastreceiver that receives the result of the evaluation from the Evaluation Thread
-        broadcastReceiverEvaluationDone = new BroadcastReceiver() {
+    /**
+     * @return a listener that shows the result of an evaluation once it arrives
+     */
+    private EvaluationService.Listener<Bundle> riskListener() {
+        return new EvaluationService.Listener<Bundle>() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                if ("com.hello.coronatrackingapp.EVALUATION_DONE".equals(intent.getAction())) {
-                    Bundle bundle = intent.getBundleExtra("com.hello.coronatrackingapp.COUNT");
-                    int intervalsExposed = bundle.getInt("intervalsExposed");
-                    //intervalsExposed = 90;        // test value
-                    riskProgress.setProgress(intervalsExposed);
-                    // add the value to the SharedPreferences, so there is no need to reevaluate when restarting the app.
-                    editor.putInt("Risk", intervalsExposed);
-                    editor.apply();
-
-                    // set the notification to the user upon evaluation result, according to the risk value.
-                    String riskString = intervalsExposed > 60 ? context.getString(R.string.high_risk_string) : context.getString(R.string.low_risk_string);
-                    setProgressBarColor(intervalsExposed);
-
-
-                    new AlertDialog.Builder(context)
-                            .setTitle("Risk of infection")
-                            .setMessage(riskString + "\n\nRisk at " + intervalsExposed + " %")
-                            .setCancelable(true)
-                            .setPositiveButton("Ok", null)
-                            .show();
+            public void onResult(final Bundle bundle) {
+                // the result arrives on the thread of the evaluation
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showRisk(bundle);
+                    }
+                });
+            }
 
-                }
-                context.unregisterReceiver(broadcastReceiverEvaluationDone);
+            @Override
+            public void onFailure(Exception e) {
+                Log.i(TAG, "risk evaluation failed. " + e);
             }
         };
+    }
 
-        IntentFilter filter = new IntentFilter("com.hello.coronatrackingapp.EVALUATION_DONE");
-        registerReceiver(broadcastReceiverEvaluationDone, filter);
-
-        Thread riskEvaluationThread = new RiskEvaluationThread(timestamps, checksums, infectedList, this);
-        riskEvaluationThread.start();
+    /**
+     * shows the result of an evaluation.
+     * @param bundle the result, see RiskEvaluationThread
+     */
+    private void showRisk(Bundle bundle) {
+        int intervalsExposed = bundle.getInt("intervalsExposed");
+        //intervalsExposed = 90;        // test value
+        riskProgress.setProgress(intervalsExposed);
+        // add the value to the SharedPreferences, so there is no need to reevaluate when restarting the app.
+        editor.putInt("Risk", intervalsExposed);
+        editor.apply();
+
+        // set the notification to the user upon evaluation result, according to the risk value.
+        String riskString = intervalsExposed > RiskEvaluationThread.HIGH_RISK_INTERVALS ? context.getString(R.string.high_risk_string) : context.getString(R.string.low_risk_string);
+        setProgressBarColor(intervalsExposed);
+
+
+        new AlertDialog.Builder(context)
+                .setTitle("Risk of infection")
+                .setMessage(riskString + "\n\nRisk at " + intervalsExposed + " %")
+                .setCancelable(true)
+                .setPositiveButton("Ok", null)
+                .show();
     }
 
     /**
@@ -261,7 +291,7 @@ public class StartScreen extends AppCompatActivity {
      * @param progress in percent (one percent = one time interval of 15 seconds).
      */
     private void setProgressBarColor(int progress) {
-        if (progress > 60) {
+        if (progress > RiskEvaluationThread.HIGH_RISK_INTERVALS) {
             riskProgress.setProgressTintList(ColorStateList.valueOf(ContextCompat.getColor(context, R.color.progressred)));
         } else {
             riskProgress.setProgressTintList(ColorStateList.valueOf(ContextCompat.getColor(context, R.color.progressgreen)));
@@ -318,7 +348,7 @@ public class StartScreen extends AppCompatActivity {
         }
 
         int risk = preferences.getInt("Risk", -1);
-        if (preferences.getInt("Risk", -1) > 60) {
+        if (risk > RiskEvaluationThread.HIGH_RISK_INTERVALS) {
             new AlertDialog.Builder(context)
                     .setTitle("Risk of infection")
                     .setMessage(getString(R.string.high_risk_string) + "\n\nRisk at " + risk + " %")
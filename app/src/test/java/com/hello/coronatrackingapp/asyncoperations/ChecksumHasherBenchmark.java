@@ -0,0 +1,85 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.lang.management.ManagementFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Compares the checksum calculation used when evaluating the risk before
+ * {@link ChecksumHasher} (a new digest and strings for every comparison) with the
+ * hasher: hashes per second and bytes allocated per hash. Not a unit test, run it
+ * with the unit test classpath on a HotSpot JVM (it needs its allocation counter):
+ *
+ * java com.hello.coronatrackingapp.asyncoperations.ChecksumHasherBenchmark [hashes]
+ */
+public class ChecksumHasherBenchmark {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final String KEY = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String[] stamps = new String[1024];
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = Long.toString(1590000000000L + i * 7919L);
+        }
+        byte[] logged = new String(MessageDigest.getInstance("SHA-256").digest((stamps[0] + KEY).getBytes())).getBytes();
+
+        // the first round warms up the JIT, only the second one is printed
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            long allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            int matched = 0;
+            for (int i = 0; i < count; i++) {
+                if (isInfected(stamps[i & 1023], KEY, logged)) {
+                    matched++;
+                }
+            }
+            print(round, "strings", count, matched, start, allocated);
+
+            start = System.nanoTime();
+            allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            matched = 0;
+            ChecksumHasher hasher = ChecksumHasher.get();
+            for (int i = 0; i < count; i++) {
+                hasher.hash(stamps[i & 1023], KEY);
+                if (hasher.matchesLogged(logged)) {
+                    matched++;
+                }
+            }
+            print(round, "hasher", count, matched, start, allocated);
+
+            start = System.nanoTime();
+            allocated = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            matched = 0;
+            for (int i = 0; i < count; i++) {
+                hasher.hash(1590000000000L + (i & 1023) * 7919L, KEY);
+                if (hasher.matchesLogged(logged)) {
+                    matched++;
+                }
+            }
+            print(round, "hasher, long", count, matched, start, allocated);
+        }
+    }
+
+    // how RiskEvaluationThread compared checksums before
+    private static boolean isInfected(String timeStamp, String listItem, byte[] checksum) throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        messageDigest.update((timeStamp + listItem).getBytes());
+        byte[] bytes = messageDigest.digest();
+        String encryptedString = new String(bytes);
+        bytes = encryptedString.getBytes();
+        return Arrays.equals(bytes, checksum);
+    }
+
+    private static void print(int round, String name, int count, int matched, long start, long allocated) {
+        long nanos = System.nanoTime() - start;
+        long bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        if (round == 1) {
+            System.out.println(String.format("  %-14s %,12.0f hashes/s %8.1f bytes/hash (%d matched)",
+                    name, count * 1e9 / nanos, (double) bytes / count, matched));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link ChecksumHasher} with calculating the checksums the way the app did before.
+ */
+public class ChecksumHasherTest {
+
+    @Test
+    public void hash_sameAsDigestOfString() throws Exception {
+        Random random = new Random(1);
+        ChecksumHasher hasher = ChecksumHasher.get();
+        for (int i = 0; i < 1000; i++) {
+            long time = random.nextInt(10) == 0 ? random.nextLong() : 1590000000000L + random.nextInt();
+            String id = UUID.randomUUID().toString();
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest((Long.toString(time) + id).getBytes());
+
+            assertArrayEquals(expected, hasher.checksum(time, id));
+            hasher.hash(Long.toString(time), id);
+            assertTrue(hasher.matches(expected));
+        }
+    }
+
+    @Test
+    public void hash_extremeAndUnusualTimestamps() throws Exception {
+        ChecksumHasher hasher = ChecksumHasher.get();
+        String id = "id";
+        for (long time : new long[]{0, 7, -1, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest((time + id).getBytes());
+            assertArrayEquals(expected, hasher.checksum(time, id));
+        }
+        for (String stamp : new String[]{"", "0001", "12345678901234567890123", "zeit\u00e4"}) {
+            byte[] expected = MessageDigest.getInstance("SHA-256").digest((stamp + id).getBytes());
+            hasher.hash(stamp, id);
+            assertTrue(stamp, hasher.matches(expected));
+        }
+    }
+
+    @Test
+    public void matches_rejectsOtherChecksum() {
+        ChecksumHasher hasher = ChecksumHasher.get();
+        byte[] checksum = hasher.checksum(1000, "id");
+        hasher.hash(1001, "id");
+        assertFalse(hasher.matches(checksum));
+        hasher.hash(1000, "other id");
+        assertFalse(hasher.matches(checksum));
+    }
+
+    @Test
+    public void logged_sameAsStringRoundTrip() throws Exception {
+        // random checksums contain all kinds of invalid UTF-8, which has to be replaced like String does it
+        // (the default charset on Android is always UTF-8)
+        Random random = new Random(2);
+        ChecksumHasher hasher = ChecksumHasher.get();
+        for (int i = 0; i < 200000; i++) {
+            String stamp = Long.toString(1590000000000L + random.nextInt());
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+            byte[] checksum = MessageDigest.getInstance("SHA-256").digest((stamp + id).getBytes());
+            byte[] expected = new String(checksum, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+
+            hasher.hash(stamp, id);
+            assertEquals(expected.length, hasher.loggedLength());
+            assertTrue(Arrays.equals(expected, Arrays.copyOf(hasher.logged(), hasher.loggedLength())));
+            assertTrue(hasher.matchesLogged(expected));
+        }
+    }
+
+    @Test
+    public void matchesLogged_rejectsOtherChecksum() {
+        ChecksumHasher hasher = ChecksumHasher.get();
+        hasher.hash(1000, "id");
+        byte[] logged = Arrays.copyOf(hasher.logged(), hasher.loggedLength());
+        hasher.hash(1001, "id");
+        assertFalse(hasher.matchesLogged(logged));
+        assertFalse(hasher.matchesLogged(new byte[0]));
+    }
+
+    @Test
+    public void matchesLoggedInArray_sameAsMatchesLogged() throws Exception {
+        Random random = new Random(3);
+        ChecksumHasher hasher = ChecksumHasher.get();
+        for (int i = 0; i < 200000; i++) {
+            String stamp = Long.toString(1590000000000L + random.nextInt());
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+            byte[] checksum = MessageDigest.getInstance("SHA-256").digest((stamp + id).getBytes());
+            byte[] expected = new String(checksum, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+            // logged between other bytes, some of them changed
+            byte[] array = new byte[expected.length + 10];
+            random.nextBytes(array);
+            System.arraycopy(expected, 0, array, 5, expected.length);
+            boolean changed = random.nextBoolean();
+            if (changed) {
+                array[5 + random.nextInt(expected.length)] ^= 1 << random.nextInt(8);
+            }
+
+            hasher.hash(stamp, id);
+            assertEquals(!changed, hasher.matchesLogged(array, 5, expected.length));
+            assertFalse(hasher.matchesLogged(array, 5, expected.length - 1));
+            assertFalse(hasher.matchesLogged(array, 5, expected.length + 1));
+            // the same once the checksum was converted for logged()
+            hasher.loggedLength();
+            assertEquals(!changed, hasher.matchesLogged(array, 5, expected.length));
+        }
+    }
+
+    @Test
+    public void matchesLoggedPrefix_sameAsMatchesLogged() throws Exception {
+        Random random = new Random(4);
+        ChecksumHasher hasher = ChecksumHasher.get();
+        for (int i = 0; i < 200000; i++) {
+            String stamp = Long.toString(1590000000000L + random.nextInt());
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+            byte[] checksum = MessageDigest.getInstance("SHA-256").digest((stamp + id).getBytes());
+            byte[] expected = new String(checksum, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8);
+            // the first 32 bytes kept between other bytes, one of them changed sometimes
+            byte[] array = new byte[ChecksumHasher.LENGTH + 10];
+            random.nextBytes(array);
+            System.arraycopy(expected, 0, array, 5, ChecksumHasher.LENGTH);
+            boolean changed = random.nextBoolean();
+            if (changed) {
+                array[5 + random.nextInt(ChecksumHasher.LENGTH)] ^= 1 << random.nextInt(8);
+            }
+
+            hasher.hash(stamp, id);
+            assertEquals(!changed, hasher.matchesLoggedPrefix(array, 5, expected.length));
+            assertFalse(hasher.matchesLoggedPrefix(array, 5, expected.length + 1));
+            if (expected.length > ChecksumHasher.LENGTH) {
+                assertFalse(hasher.matchesLoggedPrefix(array, 5, expected.length - 1));
+            }
+            hasher.loggedLength();
+            assertEquals(!changed, hasher.matchesLoggedPrefix(array, 5, expected.length));
+        }
+    }
+}
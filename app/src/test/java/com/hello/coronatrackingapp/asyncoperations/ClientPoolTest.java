@@ -0,0 +1,122 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link ClientPool} against a {@link StandInServer}.
+ */
+public class ClientPoolTest {
+    private ArrayList<String> keys;
+    private StandInServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keys.add(UUID.randomUUID().toString());
+        }
+        server = new StandInServer(keys);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void execute_reusesOneConnection() throws IOException {
+        ClientPool pool = new ClientPool("127.0.0.1", server.getPort());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(keys, pool.execute(requestList()));
+        }
+        assertTrue(pool.execute(report()));
+        assertEquals(1, server.accepted.get());
+        pool.closeIdle();
+    }
+
+    @Test
+    public void execute_retriesWhenKeptConnectionIsDead() throws IOException {
+        server.closeAfterAnswer = true;
+        ClientPool pool = new ClientPool("127.0.0.1", server.getPort());
+        assertEquals(keys, pool.execute(requestList()));
+        // the kept connection was closed by the server in the meantime
+        assertEquals(keys, pool.execute(requestList()));
+        assertEquals(2, server.accepted.get());
+        pool.closeIdle();
+    }
+
+    @Test
+    public void execute_closesConnectionsAfterKeepAlive() throws Exception {
+        ClientPool pool = new ClientPool("127.0.0.1", server.getPort(), 1000, 1000, 2, 100);
+        assertEquals(keys, pool.execute(requestList()));
+        Thread.sleep(500);
+        assertEquals(1, server.closedByClient.get());
+
+        assertEquals(keys, pool.execute(requestList()));
+        assertEquals(2, server.accepted.get());
+        pool.closeIdle();
+    }
+
+    @Test
+    public void execute_failsAfterReadTimeout() throws IOException {
+        server.silent = true;
+        ClientPool pool = new ClientPool("127.0.0.1", server.getPort(), 1000, 300, 2, 60000);
+        long start = System.currentTimeMillis();
+        try {
+            pool.execute(requestList());
+            fail("expected a timeout");
+        } catch (IOException e) {
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    @Test
+    public void execute_reportFailsWithoutAnswer() throws IOException {
+        server.silent = true;
+        ClientPool pool = new ClientPool("127.0.0.1", server.getPort(), 1000, 300, 2, 60000);
+        try {
+            pool.execute(report());
+            fail("expected the report to fail, not to be refused");
+        } catch (IOException e) {
+            // the caller learns that the report didn't get through
+        }
+    }
+
+    @Test
+    public void execute_resendsReportWhenKeptConnectionIsDead() throws IOException {
+        server.closeAfterAnswer = true;
+        ClientPool pool = new ClientPool("127.0.0.1", server.getPort());
+        assertEquals(keys, pool.execute(requestList()));
+        // the kept connection was closed by the server in the meantime
+        assertTrue(pool.execute(report()));
+        assertEquals(2, server.accepted.get());
+        pool.closeIdle();
+    }
+
+    private static ClientPool.Task<ArrayList<String>> requestList() {
+        return new ClientPool.Task<ArrayList<String>>() {
+            @Override
+            public ArrayList<String> run(Client client) throws IOException {
+                return client.requestList();
+            }
+        };
+    }
+
+    private static ClientPool.Task<Boolean> report() {
+        return new ClientPool.Task<Boolean>() {
+            @Override
+            public Boolean run(Client client) throws IOException {
+                return client.sendData("123" + UUID.randomUUID() + "\n");
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link Client} against a stand-in for the main server, once speaking
+ * protocol version 2 and once only the old text protocol.
+ */
+public class ClientTest {
+    private ServerSocket serverSocket;
+    private volatile Throwable serverError;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void requestListSince_usesFramesWithNewServer() throws Exception {
+        final ArrayList<String> keys = randomKeys(10);
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    DataInputStream in = new DataInputStream(socket.getInputStream());
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    assertEquals(FrameCodec.VERSION_LINE, readLine(in));
+                    out.write((FrameCodec.VERSION_LINE + "\n").getBytes());
+
+                    assertEquals(FrameCodec.LIST, in.readByte());
+                    assertEquals(9, in.readInt());
+                    assertEquals(5, in.readLong());
+                    assertEquals(FrameCodec.SORTED, in.readByte());
+                    FrameCodec.writeKeys(out, false, 15, keys, FrameCodec.SORTED);
+                    socket.close();
+                } catch (Throwable t) {
+                    serverError = t;
+                }
+            }
+        };
+        server.start();
+
+        Client client = new Client("127.0.0.1", serverSocket.getLocalPort());
+        client.connect();
+        final ArrayList<String> received = new ArrayList<>();
+        final boolean[] reset = new boolean[1];
+        long cursor = client.requestListSince(5, new KeyConsumer() {
+            @Override
+            public void begin(boolean resetKeys, long cursor, int count) {
+                reset[0] = resetKeys;
+            }
+
+            @Override
+            public void accept(String key) {
+                received.add(key);
+            }
+        });
+        server.join();
+
+        assertNull(serverError);
+        assertFalse(reset[0]);
+        assertEquals(15, cursor);
+        assertEquals(new HashSet<>(keys), new HashSet<>(received));
+    }
+
+    @Test
+    public void requestList_fallsBackToTextWithOldServer() throws Exception {
+        final ArrayList<String> keys = randomKeys(10);
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // like the old server, the version line is ignored
+                    Socket first = serverSocket.accept();
+                    BufferedReader firstReader = new BufferedReader(new InputStreamReader(first.getInputStream()));
+                    assertEquals(FrameCodec.VERSION_LINE, firstReader.readLine());
+
+                    Socket second = serverSocket.accept();
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(second.getInputStream()));
+                    assertEquals("requestlist", reader.readLine());
+                    OutputStream out = second.getOutputStream();
+                    for (String key : keys) {
+                        out.write((key + "\n").getBytes());
+                    }
+                    out.write("done\n".getBytes());
+                    first.close();
+                    second.close();
+                } catch (Throwable t) {
+                    serverError = t;
+                }
+            }
+        };
+        server.start();
+
+        Client client = new Client("127.0.0.1", serverSocket.getLocalPort());
+        client.connect();
+        ArrayList<String> list = client.requestList();
+        server.join();
+
+        assertNull(serverError);
+        assertEquals(keys, list);
+    }
+
+    @Test
+    public void connect_doesNotAskAgainAfterTextAnswer() throws Exception {
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // a server that answers the version line, but not with version 2
+                    Socket first = serverSocket.accept();
+                    BufferedReader firstReader = new BufferedReader(new InputStreamReader(first.getInputStream()));
+                    assertEquals(FrameCodec.VERSION_LINE, firstReader.readLine());
+                    first.getOutputStream().write("unknown request\n".getBytes());
+
+                    // the client opens a new connection for the text protocol, and one more below
+                    for (int i = 0; i < 2; i++) {
+                        Socket socket = serverSocket.accept();
+                        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                        assertEquals("requestlist", reader.readLine());
+                        socket.getOutputStream().write("done\n".getBytes());
+                        socket.close();
+                    }
+                    first.close();
+                } catch (Throwable t) {
+                    serverError = t;
+                }
+            }
+        };
+        server.start();
+
+        Client client = new Client("127.0.0.1", serverSocket.getLocalPort());
+        client.connect();
+        assertTrue(client.requestList().isEmpty());
+        client.close();
+        Client second = new Client("127.0.0.1", serverSocket.getLocalPort());
+        second.connect();
+        assertTrue(second.requestList().isEmpty());
+        second.close();
+        server.join();
+
+        assertNull(serverError);
+    }
+
+    private static String readLine(DataInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    private static ArrayList<String> randomKeys(int count) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(UUID.randomUUID().toString());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,107 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Compares loading the contact log into {@link ContactColumns} with loading it into
+ * two lists of strings the way DatabaseHandler.getLogColumn() was called for the
+ * timestamps and the checksums: heap the loaded log takes and time to load it.
+ * There is no database here, the rows are read from arrays holding the bytes a
+ * cursor would hold, and every string or blob is created from them like the cursor
+ * does. Not a unit test, run it with the unit test classpath and a fixed heap:
+ *
+ * java -Xms512m -Xmx512m com.hello.coronatrackingapp.asyncoperations.ContactColumnsBenchmark [contacts]...
+ *
+ * Without arguments 50000 contacts are loaded.
+ */
+public class ContactColumnsBenchmark {
+    // what is loaded, in fields so the previous round's log is gone before measuring the next
+    private static ArrayList<String> timestampList;
+    private static ArrayList<String> checksumList;
+    private static ContactColumns columns;
+
+    public static void main(String[] args) {
+        String[] sizes = args.length > 0 ? args : new String[]{"50000"};
+        for (String size : sizes) {
+            int count = Integer.parseInt(size);
+            ContactLogFixture log = new ContactLogFixture(1, 50, count);
+            // the rows as a cursor holds them, the fixture logs a few more than asked for
+            int rows = log.timestamps.size();
+            byte[][] stamps = new byte[rows][];
+            byte[][] checksums = new byte[rows][];
+            for (int i = 0; i < rows; i++) {
+                stamps[i] = log.timestamps.get(i).getBytes(StandardCharsets.UTF_8);
+                checksums[i] = log.checksums.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+            log = null;
+            System.out.println(rows + " contacts:");
+
+            long best = Long.MAX_VALUE;
+            long heap = 0;
+            for (int round = 0; round < 7; round++) {
+                long before = usedHeap();
+                long start = System.nanoTime();
+                timestampList = column(stamps);
+                checksumList = column(checksums);
+                best = Math.min(best, System.nanoTime() - start);
+                // the largest, a collection sometimes leaves the previous round's log in the heap before
+                heap = Math.max(heap, usedHeap() - before);
+                if (timestampList.size() + checksumList.size() != 2 * rows) {
+                    throw new AssertionError();
+                }
+                timestampList = null;
+                checksumList = null;
+            }
+            System.out.println(String.format("  %-16s %8.1f ms, %6d KB heap", "string lists", best / 1e6, heap / 1024));
+
+            best = Long.MAX_VALUE;
+            heap = 0;
+            for (int round = 0; round < 7; round++) {
+                long before = usedHeap();
+                long start = System.nanoTime();
+                columns = new ContactColumns(rows);
+                for (int i = 0; i < rows; i++) {
+                    columns.add(i + 1, parseLong(stamps[i]), checksums[i].clone());
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                heap = Math.max(heap, usedHeap() - before);
+                if (columns.size() != rows) {
+                    throw new AssertionError();
+                }
+                columns = null;
+            }
+            System.out.println(String.format("  %-16s %8.1f ms, %6d KB heap", "columns", best / 1e6, heap / 1024));
+        }
+    }
+
+    /**
+     * one call of the former getLogColumn(): a string for every row of the column.
+     */
+    private static ArrayList<String> column(byte[][] values) {
+        ArrayList<String> list = new ArrayList<>();
+        for (byte[] value : values) {
+            list.add(new String(value, StandardCharsets.UTF_8));
+        }
+        return list;
+    }
+
+    /**
+     * what the cursor does for getLong() on a column holding digits.
+     */
+    private static long parseLong(byte[] digits) {
+        long value = 0;
+        for (byte digit : digits) {
+            value = value * 10 + (digit - '0');
+        }
+        return value;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,86 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the contact log in columns.
+ */
+public class ContactColumnsTest {
+
+    @Test
+    public void add_growsAndKeepsRows() {
+        ContactLogFixture log = new ContactLogFixture(5, 10, 500);
+        ContactColumns columns = new ContactColumns(1);
+        for (int i = 0; i < log.timestamps.size(); i++) {
+            columns.add(10 + 2 * i, Long.parseLong(log.timestamps.get(i)), log.checksums.get(i).getBytes());
+        }
+        assertEquals(log.timestamps.size(), columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            assertEquals(10 + 2 * i, columns.getId(i));
+            assertEquals(log.timestamps.get(i), Long.toString(columns.getTimestamp(i)));
+        }
+        assertEquals(log.columns().getTimestamp(42), columns.getTimestamp(42));
+    }
+
+    @Test
+    public void matches_onlyTheLoggedChecksum() {
+        ContactLogFixture log = new ContactLogFixture(6, 2, 0);
+        String id = log.ids.get(0);
+        String stamp = ContactLogFixture.matchableStamp(1000, id);
+        log.log(stamp, log.ids.get(1));
+        log.log(stamp, id);
+        ContactColumns columns = log.columns();
+
+        ChecksumHasher hasher = ChecksumHasher.get();
+        hasher.hash(stamp, id);
+        assertFalse(columns.matches(hasher, 0));
+        assertTrue(columns.matches(hasher, 1));
+    }
+
+    @Test
+    public void matches_sentChecksumAndOneLoggedAsString() {
+        ChecksumHasher hasher = ChecksumHasher.get();
+        // a checksum that isn't valid UTF-8, so the string of version 1 changed it
+        long stamp = 1590000000000L;
+        byte[] sent;
+        while (true) {
+            sent = hasher.checksum(++stamp, "id");
+            if (hasher.loggedLength() != ChecksumHasher.LENGTH) {
+                break;
+            }
+        }
+        byte[] other = sent.clone();
+        other[31] ^= 1;
+        ContactColumns columns = new ContactColumns(3);
+        columns.add(1, stamp, sent);
+        columns.add(2, stamp, new String(sent, StandardCharsets.UTF_8).getBytes(StandardCharsets.UTF_8));
+        columns.add(3, stamp, other);
+
+        hasher.hash(stamp, "id");
+        assertTrue(columns.matches(hasher, 0));
+        assertTrue(columns.matches(hasher, 1));
+        assertFalse(columns.matches(hasher, 2));
+    }
+
+    @Test
+    public void indexOf_findsIdsWithGaps() {
+        ContactColumns columns = new ContactColumns(4);
+        for (long id : new long[]{3, 4, 9, 20}) {
+            columns.add(id, id * 1000, new byte[ContactColumns.WIDTH]);
+        }
+        assertEquals(0, columns.indexOf(3));
+        assertEquals(2, columns.indexOf(9));
+        assertEquals(3, columns.indexOf(20));
+        assertEquals(-1, columns.indexOf(5));
+        assertEquals(-1, columns.indexOf(21));
+        assertEquals(0, columns.firstAfter(0));
+        assertEquals(2, columns.firstAfter(4));
+        assertEquals(3, columns.firstAfter(19));
+        assertEquals(4, columns.firstAfter(20));
+        assertEquals(0, new ContactColumns(0).firstAfter(7));
+    }
+}
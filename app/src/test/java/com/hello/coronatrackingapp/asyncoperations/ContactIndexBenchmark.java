@@ -0,0 +1,98 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Compares matching with the {@link ContactIndex} to the original way of matching
+ * ({@link NaiveRiskMatcher}), on contact logs that look like 14 days of the app running:
+ * a few encounters a day with a handful of devices each, every device logging
+ * a contact every 5 to 30 seconds while it is near. Not a unit test, run it with
+ * the unit test classpath:
+ *
+ * java com.hello.coronatrackingapp.asyncoperations.ContactIndexBenchmark [keys contactsPerDay]...
+ *
+ * Without arguments a quiet, a normal and a busy user are run with 1000 keys, and
+ * the quiet one with 10000 keys. The times include building the index from the
+ * lists. The naive matcher is left out where it would take longer than half a minute.
+ */
+public class ContactIndexBenchmark {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    public static void main(String[] args) {
+        String[] sizes = args.length > 0 ? args
+                : new String[]{"1000", "150", "1000", "1000", "1000", "3500", "10000", "150"};
+        for (int i = 0; i + 1 < sizes.length; i += 2) {
+            int keys = Integer.parseInt(sizes[i]);
+            int perDay = Integer.parseInt(sizes[i + 1]);
+            ContactLogFixture log = fourteenDays(i, perDay);
+            ArrayList<String> keyList = log.keys(keys, 10);
+            System.out.println(keys + " keys, " + log.timestamps.size() + " contacts in 14 days ("
+                    + distinct(log) + " distinct timestamps):");
+            if ((long) keys * log.timestamps.size() <= 5000000L) {
+                run("naive", new NaiveRiskMatcher(), log, keyList);
+            }
+            run("index", new RiskMatcher() {
+                @Override
+                public ArrayList<ArrayList<String>> match(ArrayList<String> timestamps, ArrayList<String> checksums, ArrayList<String> infectedList) {
+                    ContactColumns columns = ContactLogFixture.columns(timestamps, checksums);
+                    ContactIndex index = new ContactIndex(columns, 0);
+                    ArrayList<ArrayList<String>> matches = new ArrayList<>();
+                    for (String key : infectedList) {
+                        ArrayList<String> stampsInOneKey = ContactLogFixture.match(index, columns, key);
+                        if (stampsInOneKey != null) {
+                            matches.add(stampsInOneKey);
+                        }
+                    }
+                    return matches;
+                }
+            }, log, keyList);
+        }
+    }
+
+    /**
+     * @param perDay contacts logged per day on average
+     */
+    static ContactLogFixture fourteenDays(long seed, int perDay) {
+        Random random = new Random(seed);
+        ContactLogFixture log = new ContactLogFixture(seed, Math.max(10, perDay / 5), 0);
+        long start = 1590000000000L;
+        for (int day = 0; day < 14; day++) {
+            int logged = 0;
+            while (logged < perDay) {
+                // an encounter of up to an hour between 7 and 22 o'clock
+                long from = start + day * DAY + (7 + random.nextInt(15)) * 3600 * 1000L;
+                long until = from + (5 + random.nextInt(55)) * 60 * 1000L;
+                int devices = 1 + random.nextInt(6);
+                for (int d = 0; d < devices && logged < perDay; d++) {
+                    String id = log.ids.get(random.nextInt(log.ids.size()));
+                    for (long time = from + random.nextInt(30000); time < until && logged < perDay;
+                         time += 5000 + random.nextInt(25000)) {
+                        log.log(Long.toString(time), id);
+                        logged++;
+                    }
+                }
+            }
+        }
+        return log;
+    }
+
+    private static int distinct(ContactLogFixture log) {
+        return new HashSet<>(log.timestamps).size();
+    }
+
+    private static void run(String name, RiskMatcher matcher, ContactLogFixture log, ArrayList<String> keys) {
+        // the first round warms up the JIT, the best of the other rounds is printed
+        long best = Long.MAX_VALUE;
+        int matched = 0;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            matched = matcher.match(log.timestamps, log.checksums, keys).size();
+            if (round > 0) {
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        }
+        System.out.println(String.format("  %-10s %8d ms, %d keys matched", name, best / 1000000, matched));
+    }
+}
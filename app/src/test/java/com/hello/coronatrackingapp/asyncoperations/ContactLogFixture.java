@@ -0,0 +1,138 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds a contact log the way the app logs one: the other device sends a
+ * timestamp and the SHA-256 checksum of timestamp + its ID in two halves,
+ * which are stored as strings (see Central and Peripheral).
+ */
+class ContactLogFixture {
+    final ArrayList<String> timestamps = new ArrayList<>();
+    final ArrayList<String> checksums = new ArrayList<>();
+    // IDs of the devices that were met
+    final ArrayList<String> ids = new ArrayList<>();
+
+    private final Random random;
+    private long time = 1590000000000L;
+
+    /**
+     * @param seed seed of the random log
+     * @param devices number of devices that were met
+     * @param contacts number of contacts logged with those devices
+     */
+    ContactLogFixture(long seed, int devices, int contacts) {
+        random = new Random(seed);
+        for (int i = 0; i < devices; i++) {
+            ids.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        for (int i = 0; i < contacts; i++) {
+            // mostly a few seconds apart, sometimes longer than the exposure gap
+            time += random.nextInt(10) == 0 ? 60 * 1000 + random.nextInt(3600 * 1000) : random.nextInt(30 * 1000);
+            String id = ids.get(random.nextInt(devices));
+            log(Long.toString(time), id);
+            if (random.nextInt(20) == 0) {
+                // two devices met at the same millisecond
+                log(Long.toString(time), ids.get(random.nextInt(devices)));
+            }
+        }
+    }
+
+    void log(String timestamp, String id) {
+        timestamps.add(timestamp);
+        checksums.add(logged(timestamp, id));
+    }
+
+    /**
+     * @return the first timestamp from start on whose checksum with the ID can be
+     * matched at all. If a UTF-8 sequence crosses the middle of the checksum, the
+     * halves logged as strings differ from the whole checksum as a string.
+     */
+    static String matchableStamp(long start, String id) {
+        for (long time = start; ; time++) {
+            String timestamp = Long.toString(time);
+            if (logged(timestamp, id).equals(new String(checksum(timestamp, id)))) {
+                return timestamp;
+            }
+        }
+    }
+
+    private static String logged(String timestamp, String id) {
+        byte[] checksum = checksum(timestamp, id);
+        byte[] checksum1 = new byte[checksum.length / 2];
+        byte[] checksum2 = new byte[checksum.length - checksum1.length];
+        System.arraycopy(checksum, 0, checksum1, 0, checksum1.length);
+        System.arraycopy(checksum, checksum1.length, checksum2, 0, checksum2.length);
+        return new String(checksum1) + new String(checksum2);
+    }
+
+    /**
+     * @param count number of keys
+     * @param infected number of those that are IDs of devices in the log, the others are random
+     * @return the keys in random order
+     */
+    ArrayList<String> keys(int count, int infected) {
+        ArrayList<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < infected; i++) {
+            keys.add(ids.get(i % ids.size()));
+        }
+        while (keys.size() < count) {
+            keys.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        Collections.shuffle(keys, random);
+        return keys;
+    }
+
+    /**
+     * @return the log in columns, the way the evaluation reads it
+     */
+    ContactColumns columns() {
+        return columns(timestamps, checksums);
+    }
+
+    /**
+     * @param timestamps timestamps of the logged contacts, the digits of the milliseconds
+     * @param checksums checksums logged with the timestamps, same order
+     * @return the contacts in columns, the rows get ids from 1 on
+     */
+    static ContactColumns columns(List<String> timestamps, List<String> checksums) {
+        ContactColumns columns = new ContactColumns(timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            columns.add(i + 1, Long.parseLong(timestamps.get(i)), checksums.get(i).getBytes());
+        }
+        return columns;
+    }
+
+    /**
+     * matches a key the way the matchers did, for comparing with them.
+     * @param index index of the columns
+     * @param columns the contacts
+     * @param key key of an infected user
+     * @return the timestamps of the contacts the key matches in the order of the log, null if there are none
+     */
+    static ArrayList<String> match(ContactIndex index, ContactColumns columns, String key) {
+        int[] rows = index.matchRows(key);
+        if (rows == null) {
+            return null;
+        }
+        ArrayList<String> stampsInOneKey = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            stampsInOneKey.add(Long.toString(columns.getTimestamp(row)));
+        }
+        return stampsInOneKey;
+    }
+
+    static byte[] checksum(String timestamp, String id) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest((timestamp + id).getBytes());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
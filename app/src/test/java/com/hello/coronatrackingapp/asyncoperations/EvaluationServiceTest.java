@@ -0,0 +1,342 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link EvaluationService} runs one evaluation for everyone asking at
+ * the same time and cancels one that was superseded.
+ */
+public class EvaluationServiceTest {
+
+    @Test
+    public void evaluate_coalescesRequestsWhileRunning() throws Exception {
+        Gate gate = new Gate();
+        EvaluationService<Integer> service = new EvaluationService<>(gate);
+        try {
+            Recorder first = new Recorder();
+            Future<Integer> result = service.evaluate(first);
+            gate.awaitStarted(1);
+            // the button pressed again and the timer going off while it runs
+            Recorder second = new Recorder();
+            Future<Integer> again = service.evaluate(second);
+            Future<Integer> timer = service.evaluate();
+            gate.release();
+
+            assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), again.get(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), timer.get(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(1), first.results);
+            assertEquals(Collections.singletonList(1), second.results);
+            assertEquals(1, gate.runs.get());
+
+            // asking after it is done starts a new one
+            gate.release();
+            assertEquals(Integer.valueOf(2), service.evaluate().get(5, TimeUnit.SECONDS));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void evaluate_coalescesRequestsFromManyThreads() throws Exception {
+        final Gate gate = new Gate();
+        final EvaluationService<Integer> service = new EvaluationService<>(gate);
+        try {
+            service.evaluate();
+            gate.awaitStarted(1);
+            final List<Future<Integer>> results = Collections.synchronizedList(new ArrayList<Future<Integer>>());
+            Thread[] threads = new Thread[8];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < 50; j++) {
+                            results.add(service.evaluate());
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            gate.release();
+            for (Future<Integer> result : results) {
+                assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, gate.runs.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void reevaluate_cancelsSupersededRun() throws Exception {
+        Gate gate = new Gate();
+        EvaluationService<Integer> service = new EvaluationService<>(gate);
+        try {
+            Recorder waiting = new Recorder();
+            Future<Integer> result = service.evaluate(waiting);
+            gate.awaitStarted(1);
+
+            Future<Integer> restarted = service.reevaluate();
+            assertSame(result, restarted);
+            gate.awaitStarted(2);
+            assertEquals(1, gate.interrupted.get());
+            gate.release();
+
+            // everyone gets the result of the run that wasn't superseded
+            assertEquals(Integer.valueOf(2), result.get(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(2), waiting.results);
+            assertTrue(waiting.failures.isEmpty());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void reevaluate_tellsListenersOfBothRequests() throws Exception {
+        Gate gate = new Gate();
+        EvaluationService<Integer> service = new EvaluationService<>(gate);
+        try {
+            Recorder waiting = new Recorder();
+            service.evaluate(waiting);
+            gate.awaitStarted(1);
+
+            // the contacts were purged while the evaluation read them
+            Recorder purge = new Recorder();
+            Future<Integer> result = service.reevaluate(purge);
+            gate.awaitStarted(2);
+            gate.release();
+            assertEquals(Integer.valueOf(2), result.get(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(2), waiting.results);
+            assertEquals(Collections.singletonList(2), purge.results);
+
+            // with nothing running it starts an evaluation of its own
+            Recorder idle = new Recorder();
+            gate.release();
+            assertEquals(Integer.valueOf(3), service.reevaluate(idle).get(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList(3), idle.results);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void reevaluate_doesNothingWhileWaiting() throws Exception {
+        // a single thread that is busy, so the evaluation has to wait
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch busy = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    busy.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Gate gate = new Gate();
+        EvaluationService<Integer> service = new EvaluationService<>(gate, executor);
+        try {
+            Future<Integer> result = service.evaluate();
+            assertSame(result, service.reevaluate());
+            assertSame(result, service.evaluate());
+            busy.countDown();
+            gate.release();
+            assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+            assertEquals(1, gate.runs.get());
+            assertEquals(0, gate.interrupted.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void cancel_stopsEvaluationForEveryone() throws Exception {
+        Gate gate = new Gate();
+        EvaluationService<Integer> service = new EvaluationService<>(gate);
+        try {
+            Recorder first = new Recorder();
+            Future<Integer> result = service.evaluate(first);
+            gate.awaitStarted(1);
+            Recorder second = new Recorder();
+            service.evaluate(second);
+
+            assertTrue(result.cancel(true));
+            assertTrue(result.isCancelled());
+            assertTrue(result.isDone());
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("cancelled");
+            } catch (CancellationException expected) {
+                // everyone waiting is told
+            }
+            assertTrue(first.failures.get(0) instanceof CancellationException);
+            assertTrue(second.failures.get(0) instanceof CancellationException);
+            assertTrue(gate.awaitInterrupted(1));
+
+            // the next request starts a new evaluation
+            gate.release();
+            assertEquals(Integer.valueOf(2), service.evaluate().get(5, TimeUnit.SECONDS));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void evaluate_reportsFailure() throws Exception {
+        EvaluationService<Integer> service = new EvaluationService<>(new EvaluationService.Evaluation<Integer>() {
+            @Override
+            public Integer evaluate() throws Exception {
+                throw new IllegalStateException("no database");
+            }
+        });
+        try {
+            Recorder recorder = new Recorder();
+            Future<Integer> result = service.evaluate(recorder);
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            assertTrue(recorder.failures.get(0) instanceof IllegalStateException);
+            // asking again tries again
+            Future<Integer> again = service.evaluate();
+            assertNotSame(result, again);
+            try {
+                again.get(5, TimeUnit.SECONDS);
+                fail("failed");
+            } catch (ExecutionException expected) {
+                // still no database
+            }
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void get_timesOut() throws Exception {
+        Gate gate = new Gate();
+        EvaluationService<Integer> service = new EvaluationService<>(gate);
+        try {
+            Future<Integer> result = service.evaluate();
+            try {
+                result.get(50, TimeUnit.MILLISECONDS);
+                fail("still running");
+            } catch (TimeoutException expected) {
+                // the evaluation goes on
+            }
+            gate.release();
+            assertEquals(Integer.valueOf(1), result.get(5, TimeUnit.SECONDS));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void runs_neverOverlap() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        EvaluationService<Integer> service = new EvaluationService<>(new EvaluationService.Evaluation<Integer>() {
+            @Override
+            public Integer evaluate() {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    // ignores the interrupt for a while, like a download that has to finish
+                    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+                    while (System.nanoTime() < end) {
+                        Thread.yield();
+                    }
+                    return 0;
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+        try {
+            Future<Integer> last = null;
+            for (int i = 0; i < 100; i++) {
+                last = i % 3 == 0 ? service.reevaluate() : service.evaluate();
+            }
+            last.get(5, TimeUnit.SECONDS);
+            assertEquals(0, overlaps.get());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * An evaluation that waits to be released, returning the number of its run.
+     * Stops when interrupted like the risk evaluation does.
+     */
+    private static class Gate implements EvaluationService.Evaluation<Integer> {
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        private final Semaphore started = new Semaphore(0);
+        private final Semaphore released = new Semaphore(0);
+        private final Semaphore stopped = new Semaphore(0);
+
+        @Override
+        public Integer evaluate() {
+            int run = runs.incrementAndGet();
+            started.release();
+            try {
+                released.acquire();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                stopped.release();
+                throw new CancellationException();
+            }
+            return run;
+        }
+
+        void awaitStarted(int runs) throws InterruptedException {
+            assertTrue(started.tryAcquire(5, TimeUnit.SECONDS));
+            assertEquals(runs, this.runs.get());
+        }
+
+        boolean awaitInterrupted(int count) throws InterruptedException {
+            return stopped.tryAcquire(count, 5, TimeUnit.SECONDS);
+        }
+
+        void release() {
+            released.release();
+        }
+    }
+
+    private static class Recorder implements EvaluationService.Listener<Integer> {
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+
+        @Override
+        public void onResult(Integer result) {
+            results.add(result);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            failures.add(e);
+        }
+    }
+}
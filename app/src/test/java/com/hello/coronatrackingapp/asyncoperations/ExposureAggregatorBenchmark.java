@@ -0,0 +1,66 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares adding up the exposure of matched contacts with {@link ExposureAggregator}
+ * from their rows in the {@link ContactColumns} to building a list of timestamp
+ * strings per key and adding up the time between them the way the evaluation did
+ * before (see ExposureAggregatorTest.calculateTimeExposed()). Not a unit test, run it with the unit test classpath:
+ *
+ * java com.hello.coronatrackingapp.asyncoperations.ExposureAggregatorBenchmark [keys matchesPerKey]...
+ *
+ * Without arguments many keys with few matches and few keys with many matches are run.
+ */
+public class ExposureAggregatorBenchmark {
+
+    public static void main(String[] args) {
+        String[] sizes = args.length > 0 ? args : new String[]{"1000", "50", "10", "5000"};
+        for (int i = 0; i + 1 < sizes.length; i += 2) {
+            int keys = Integer.parseInt(sizes[i]);
+            int perKey = Integer.parseInt(sizes[i + 1]);
+            ContactLogFixture log = new ContactLogFixture(i, 20, keys * perKey);
+            ContactColumns columns = log.columns();
+            // every key matched a random run of the log
+            Random random = new Random(i);
+            int[][] matches = new int[keys][perKey];
+            for (int key = 0; key < keys; key++) {
+                int start = random.nextInt(columns.size() - perKey + 1);
+                for (int m = 0; m < perKey; m++) {
+                    matches[key][m] = start + m;
+                }
+            }
+            System.out.println(keys + " keys with " + perKey + " matches each:");
+
+            long best = Long.MAX_VALUE;
+            long exposure = 0;
+            for (int round = 0; round < 10; round++) {
+                long start = System.nanoTime();
+                exposure = 0;
+                for (int[] rows : matches) {
+                    ArrayList<String> stampsInOneKey = new ArrayList<>();
+                    for (int row : rows) {
+                        stampsInOneKey.add(Long.toString(columns.getTimestamp(row)));
+                    }
+                    exposure += ExposureAggregatorTest.calculateTimeExposed(stampsInOneKey);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(String.format("  %-24s %8.2f ms, %d ms exposed", "lists of strings", best / 1e6, exposure));
+
+            best = Long.MAX_VALUE;
+            ExposureAggregator aggregator = new ExposureAggregator(1600000000000L);
+            for (int round = 0; round < 10; round++) {
+                long start = System.nanoTime();
+                aggregator.clear();
+                for (int[] rows : matches) {
+                    aggregator.addKey(columns, rows);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.println(String.format("  %-24s %8.2f ms, %d ms exposed", "aggregator", best / 1e6,
+                    aggregator.getExposure()));
+        }
+    }
+}
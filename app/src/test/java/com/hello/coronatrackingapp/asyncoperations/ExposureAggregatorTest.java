@@ -0,0 +1,157 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for adding up the exposure with {@link ExposureAggregator}.
+ */
+public class ExposureAggregatorTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long NOW = 1590000000000L;
+
+    @Test
+    public void defaults_sameAsOriginalCalculation() {
+        Random random = new Random(1);
+        ExposureAggregator aggregator = new ExposureAggregator(NOW);
+        long expected = 0;
+        int contacts = 0;
+        for (int key = 0; key < 200; key++) {
+            long[] stamps = stamps(random, NOW - 13 * DAY, 1 + random.nextInt(100));
+            expected += calculateTimeExposed(stamps);
+            contacts += stamps.length;
+            aggregator.addKey(stamps, stamps.length);
+        }
+        assertEquals(contacts, aggregator.getContacts());
+        assertEquals(expected, aggregator.getExposure());
+        assertEquals(expected, aggregator.getWeightedExposure());
+    }
+
+    @Test
+    public void addKey_orderDoesNotMatter() {
+        Random random = new Random(2);
+        for (int key = 0; key < 100; key++) {
+            long[] stamps = stamps(random, NOW - 3 * DAY, 1 + random.nextInt(50));
+            ExposureAggregator sorted = new ExposureAggregator(NOW);
+            sorted.addKey(stamps, stamps.length);
+            for (int i = stamps.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long stamp = stamps[i];
+                stamps[i] = stamps[j];
+                stamps[j] = stamp;
+            }
+            ExposureAggregator shuffled = new ExposureAggregator(NOW);
+            shuffled.addKey(stamps, stamps.length);
+            assertEquals(sorted.getExposure(), shuffled.getExposure());
+            for (int day = 0; day < sorted.getDays(); day++) {
+                assertEquals(sorted.getDayExposure(day), shuffled.getDayExposure(day));
+            }
+        }
+    }
+
+    @Test
+    public void addKey_rowsSameAsTimestamps() {
+        ContactLogFixture log = new ContactLogFixture(3, 5, 400);
+        ContactColumns columns = log.columns();
+        int[] rows = {399, 3, 17, 18, 19, 250, 4, 5};
+        // more room than timestamps, only count of them are added
+        long[] stamps = new long[rows.length + 3];
+        for (int i = 0; i < rows.length; i++) {
+            stamps[i] = Long.parseLong(log.timestamps.get(rows[i]));
+        }
+        ExposureAggregator fromRows = new ExposureAggregator(NOW);
+        fromRows.addKey(columns, rows);
+        ExposureAggregator fromStamps = new ExposureAggregator(NOW);
+        fromStamps.addKey(stamps, rows.length);
+        assertEquals(fromStamps.getExposure(), fromRows.getExposure());
+        assertEquals(rows.length, fromRows.getContacts());
+    }
+
+    @Test
+    public void gap_isConfigurable() {
+        // contacts 10, 40 and 100 seconds apart
+        long[] stamps = {NOW - 200000, NOW - 190000, NOW - 150000, NOW - 50000};
+        assertEquals(50000, exposure(60000, 0, stamps));
+        assertEquals(10000, exposure(40000, 0, stamps));
+        assertEquals(150000, exposure(100001, 0, stamps));
+        // the first contact and the one after the gap are credited
+        assertEquals(50000 + 2 * 5000, exposure(60000, 5000, stamps));
+    }
+
+    @Test
+    public void days_collectAndWeigh() {
+        double[] weights = {1, 0.5, 0.25};
+        ExposureAggregator aggregator = new ExposureAggregator(60000, 0, weights, NOW);
+        // 20 seconds today, 30 yesterday, 40 the day before, 50 before that
+        for (int day = 0; day < 4; day++) {
+            long start = NOW - day * DAY - 2 * 60 * 60 * 1000L;
+            aggregator.addKey(new long[]{start, start + (20 + day * 10) * 1000}, 2);
+        }
+        assertEquals(3, aggregator.getDays());
+        assertEquals(20000, aggregator.getDayExposure(0));
+        assertEquals(30000, aggregator.getDayExposure(1));
+        assertEquals(40000, aggregator.getDayExposure(2));
+        assertEquals(140000, aggregator.getExposure());
+        assertEquals(20000 + 15000 + 10000, aggregator.getWeightedExposure());
+
+        aggregator.clear();
+        assertEquals(0, aggregator.getContacts());
+        assertEquals(0, aggregator.getWeightedExposure());
+    }
+
+    @Test
+    public void days_laterClockCountsForToday() {
+        ExposureAggregator aggregator = new ExposureAggregator(NOW);
+        aggregator.addKey(new long[]{NOW + 1000, NOW + 11000}, 2);
+        assertEquals(10000, aggregator.getDayExposure(0));
+    }
+
+    private static long exposure(long gap, long credit, long[] stamps) {
+        ExposureAggregator aggregator = new ExposureAggregator(gap, credit, ExposureAggregator.uniformWeights(14), NOW);
+        aggregator.addKey(stamps, stamps.length);
+        return aggregator.getExposure();
+    }
+
+    /**
+     * how the app calculated the time a user was exposed to one key before there
+     * was an aggregator, the reference for the defaults: the time between two of the
+     * ascending stamps counts if it is less than a minute, the first stamp counts nothing.
+     */
+    static long calculateTimeExposed(List<String> stamps) {
+        long[] parsed = new long[stamps.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = Long.parseLong(stamps.get(i));
+        }
+        return calculateTimeExposed(parsed);
+    }
+
+    private static long calculateTimeExposed(long[] stamps) {
+        long timeExposed = 0;
+        long lastEncounter = 0;
+        for (long encounterTime : stamps) {
+            long difference = encounterTime - lastEncounter;
+            if (difference < 60 * 1000) {
+                timeExposed += difference;
+            }
+            lastEncounter = encounterTime;
+        }
+        return timeExposed;
+    }
+
+    /**
+     * @return ascending timestamps, mostly a few seconds apart, sometimes longer than the gap
+     */
+    private static long[] stamps(Random random, long start, int count) {
+        long[] stamps = new long[count];
+        long time = start;
+        for (int i = 0; i < count; i++) {
+            time += random.nextInt(10) == 0 ? 60 * 1000 + random.nextInt(3600 * 1000) : random.nextInt(30 * 1000);
+            stamps[i] = time;
+        }
+        return stamps;
+    }
+}
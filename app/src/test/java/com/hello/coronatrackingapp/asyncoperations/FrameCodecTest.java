@@ -0,0 +1,188 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip tests for the frames of protocol version 2 (see {@link FrameCodec}).
+ */
+public class FrameCodecTest {
+
+    @Test
+    public void keys_roundTrip() throws IOException {
+        ArrayList<String> keys = randomKeys(100);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeKeys(new DataOutputStream(bytes), true, 4711, keys, FrameCodec.RAW);
+
+        KeyDelta delta = FrameCodec.readKeys(input(bytes));
+        assertTrue(delta.isReset());
+        assertEquals(4711, delta.getCursor());
+        assertEquals(keys, delta.getKeys());
+    }
+
+    @Test
+    public void keys_deflateRoundTrip() throws IOException {
+        ArrayList<String> keys = randomKeys(100);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeKeys(new DataOutputStream(bytes), false, 100, keys, FrameCodec.DEFLATE);
+
+        KeyDelta delta = FrameCodec.readKeys(input(bytes));
+        assertEquals(100, delta.getCursor());
+        assertEquals(keys, delta.getKeys());
+    }
+
+    @Test
+    public void keys_sortedRoundTrip() throws IOException {
+        for (int count : new int[]{0, 1, 2, 1000}) {
+            ArrayList<String> keys = randomKeys(count);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FrameCodec.writeKeys(new DataOutputStream(bytes), false, count, keys, FrameCodec.SORTED);
+
+            // the order of the keys is lost
+            KeyDelta delta = FrameCodec.readKeys(input(bytes));
+            assertEquals(count, delta.getKeys().size());
+            assertEquals(new HashSet<>(keys), new HashSet<>(delta.getKeys()));
+        }
+    }
+
+    @Test
+    public void keys_sortedExtremes() throws IOException {
+        ArrayList<String> keys = new ArrayList<>();
+        keys.add("ffffffff-ffff-ffff-ffff-ffffffffffff");
+        keys.add("00000000-0000-0000-0000-000000000000");
+        keys.add("00000000-0000-0000-ffff-ffffffffffff");
+        keys.add("00000000-0000-0001-0000-000000000000");
+        keys.add("80000000-0000-0000-8000-000000000000");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeKeys(new DataOutputStream(bytes), false, 5, keys, FrameCodec.SORTED);
+
+        assertEquals(new HashSet<>(keys), new HashSet<>(FrameCodec.readKeys(input(bytes)).getKeys()));
+    }
+
+    @Test
+    public void keys_streamedToConsumerAndFrameEndRespected() throws IOException {
+        final ArrayList<String> keys = randomKeys(50);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        FrameCodec.writeKeys(out, true, 50, keys, FrameCodec.DEFLATE);
+        FrameCodec.writeAck(out, true);
+
+        final ArrayList<String> received = new ArrayList<>();
+        final int[] announced = new int[1];
+        DataInputStream in = input(bytes);
+        long cursor = FrameCodec.readKeys(in, new KeyConsumer() {
+            @Override
+            public void begin(boolean reset, long cursor, int count) {
+                assertTrue(reset);
+                assertTrue(received.isEmpty());
+                announced[0] = count;
+            }
+
+            @Override
+            public void accept(String key) {
+                received.add(key);
+            }
+        });
+        assertEquals(50, cursor);
+        assertEquals(50, announced[0]);
+        assertEquals(keys, received);
+        // the next frame is still complete
+        assertTrue(FrameCodec.readAck(in));
+    }
+
+    @Test
+    public void keys_emptyRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeKeys(new DataOutputStream(bytes), false, 12, new ArrayList<String>(), FrameCodec.RAW);
+
+        KeyDelta delta = FrameCodec.readKeys(input(bytes));
+        assertFalse(delta.isReset());
+        assertEquals(12, delta.getCursor());
+        assertTrue(delta.getKeys().isEmpty());
+    }
+
+    @Test
+    public void keys_takeLessThanHalfTheBytesOfLines() throws IOException {
+        ArrayList<String> keys = randomKeys(1000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeKeys(new DataOutputStream(bytes), false, 1000, keys, FrameCodec.RAW);
+
+        int lines = 0;
+        for (String key : keys) {
+            lines += key.length() + 1;
+        }
+        lines += "done\n".length();
+        assertTrue(bytes.size() * 2 < lines);
+    }
+
+    @Test
+    public void ack_roundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        FrameCodec.writeAck(out, true);
+        FrameCodec.writeAck(out, false);
+
+        DataInputStream in = input(bytes);
+        assertTrue(FrameCodec.readAck(in));
+        assertFalse(FrameCodec.readAck(in));
+    }
+
+    @Test
+    public void list_layout() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeList(new DataOutputStream(bytes), 99, FrameCodec.SORTED);
+
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(FrameCodec.LIST, frame.get());
+        assertEquals(9, frame.getInt());
+        assertEquals(99, frame.getLong());
+        assertEquals(FrameCodec.SORTED, frame.get());
+        assertFalse(frame.hasRemaining());
+    }
+
+    @Test
+    public void report_layout() throws IOException {
+        String key = UUID.randomUUID().toString();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeReport(new DataOutputStream(bytes), key, "123");
+
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        assertEquals(FrameCodec.REPORT, frame.get());
+        assertEquals(FrameCodec.KEY_SIZE + 3, frame.getInt());
+        assertEquals(key, new UUID(frame.getLong(), frame.getLong()).toString());
+        assertEquals('1', frame.get());
+        assertEquals('2', frame.get());
+        assertEquals('3', frame.get());
+        assertFalse(frame.hasRemaining());
+    }
+
+    @Test(expected = IOException.class)
+    public void readKeys_rejectsOtherFrames() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        FrameCodec.writeAck(new DataOutputStream(bytes), true);
+        FrameCodec.readKeys(input(bytes));
+    }
+
+    private static DataInputStream input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static ArrayList<String> randomKeys(int count) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(UUID.randomUUID().toString());
+        }
+        return keys;
+    }
+}
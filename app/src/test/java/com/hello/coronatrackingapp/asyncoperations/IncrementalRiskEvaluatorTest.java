@@ -0,0 +1,203 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for evaluating the risk incrementally: whatever happens to the contact log
+ * and the stored keys between two evaluations, the result has to be the same as
+ * matching everything again.
+ */
+public class IncrementalRiskEvaluatorTest {
+    private static final long NOW = 1600000000000L;
+
+    @Test
+    public void evaluate_sameAsFullEvaluation() {
+        for (long seed = 0; seed < 40; seed++) {
+            Model model = new Model(seed);
+            EvaluationState state = new EvaluationState();
+            IncrementalRiskEvaluator evaluator = new IncrementalRiskEvaluator();
+            int matched = 0;
+            for (int step = 0; step < 60; step++) {
+                model.change();
+                ExposureAggregator result = new ExposureAggregator(NOW);
+                evaluator.evaluate(state, model.columns(), model.keys, result);
+
+                ArrayList<ArrayList<String>> matches = new NaiveRiskMatcher().match(
+                        model.log.timestamps, model.log.checksums, new ArrayList<>(model.keys.keys.values()));
+                int contactCounter = 0;
+                long milSecsExposed = 0;
+                for (ArrayList<String> stampsInOneKey : matches) {
+                    contactCounter += stampsInOneKey.size();
+                    milSecsExposed += ExposureAggregatorTest.calculateTimeExposed(stampsInOneKey);
+                }
+                String message = "seed " + seed + ", step " + step;
+                assertEquals(message, contactCounter, result.getContacts());
+                assertEquals(message, milSecsExposed, result.getExposure());
+                matched += contactCounter;
+            }
+            // the log and keys have to actually match for the test to mean something
+            assertTrue("seed " + seed, matched > 0);
+        }
+    }
+
+    @Test
+    public void evaluate_onlyReadsNewKeysAndKeysForNewContacts() {
+        Model model = new Model(1);
+        model.addContacts(50);
+        model.addKeys(20);
+        EvaluationState state = new EvaluationState();
+        IncrementalRiskEvaluator evaluator = new IncrementalRiskEvaluator();
+        evaluator.evaluate(state, model.columns(), model.keys, new ExposureAggregator(NOW));
+        assertEquals("[0-20]", model.keys.reads.toString());
+
+        model.keys.reads.clear();
+        evaluator.evaluate(state, model.columns(), model.keys, new ExposureAggregator(NOW));
+        assertTrue(model.keys.reads.isEmpty());
+
+        model.addKeys(5);
+        evaluator.evaluate(state, model.columns(), model.keys, new ExposureAggregator(NOW));
+        assertEquals("[20-25]", model.keys.reads.toString());
+
+        model.keys.reads.clear();
+        model.addContacts(10);
+        evaluator.evaluate(state, model.columns(), model.keys, new ExposureAggregator(NOW));
+        assertEquals("[0-25]", model.keys.reads.toString());
+    }
+
+    @Test
+    public void evaluate_stopsWhenInterrupted() {
+        Model model = new Model(2);
+        model.addContacts(50);
+        model.addKeys(20);
+        EvaluationState state = new EvaluationState();
+        Thread.currentThread().interrupt();
+        try {
+            new IncrementalRiskEvaluator().evaluate(state, model.columns(), model.keys, new ExposureAggregator(NOW));
+            fail("not cancelled");
+        } catch (CancellationException expected) {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    /**
+     * A contact log and stored keys that change the way they do in the app.
+     */
+    private static class Model {
+        final Random random;
+        // the log's ids, timestamps and checksums
+        final ContactLogFixture log;
+        final ArrayList<Long> contactIds = new ArrayList<>();
+        final Keys keys = new Keys();
+        private long nextContactId = 1;
+        private long time = 1590000000000L;
+        // devices that reported their infection, a device reports once
+        private final HashSet<String> reported = new HashSet<>();
+
+        Model(long seed) {
+            random = new Random(seed);
+            log = new ContactLogFixture(seed, 12, 0);
+        }
+
+        void change() {
+            int change = random.nextInt(10);
+            if (change < 4) {
+                addContacts(1 + random.nextInt(30));
+            } else if (change < 7) {
+                addKeys(1 + random.nextInt(8));
+            } else if (change == 7) {
+                // older contacts are deleted after 14 days
+                remove(0, random.nextInt(contactIds.size() / 2 + 1));
+            } else if (change == 8 && !contactIds.isEmpty()) {
+                int from = random.nextInt(contactIds.size());
+                remove(from, from + 1 + random.nextInt(Math.min(5, contactIds.size() - from)));
+            } else if (random.nextBoolean()) {
+                // the log was cleared, the ids go on
+                remove(0, contactIds.size());
+            } else {
+                resetKeys();
+            }
+        }
+
+        void addContacts(int count) {
+            for (int i = 0; i < count; i++) {
+                // mostly a few seconds apart, sometimes longer than the exposure gap
+                time += random.nextInt(10) == 0 ? 60 * 1000 + random.nextInt(600 * 1000) : random.nextInt(30 * 1000);
+                String id = log.ids.get(random.nextInt(log.ids.size()));
+                log.log(ContactLogFixture.matchableStamp(time, id), id);
+                time = Long.parseLong(log.timestamps.get(log.timestamps.size() - 1));
+                contactIds.add(nextContactId++);
+            }
+        }
+
+        void addKeys(int count) {
+            for (int i = 0; i < count; i++) {
+                String id = log.ids.get(random.nextInt(log.ids.size()));
+                if (random.nextInt(3) == 0 || !reported.add(id)) {
+                    id = new UUID(random.nextLong(), random.nextLong()).toString();
+                }
+                keys.keys.put(keys.getCursor() + 1, id);
+            }
+        }
+
+        /**
+         * the server lost keys and sent all it has: the ones up to some sequence
+         * number are the same as before, the others are new.
+         */
+        void resetKeys() {
+            long kept = keys.getCursor() == 0 ? 0 : random.nextInt((int) keys.getCursor() + 1);
+            keys.keys.tailMap(kept, false).clear();
+            addKeys(random.nextInt(10));
+        }
+
+        /**
+         * @return the log as the database loads it
+         */
+        ContactColumns columns() {
+            ContactColumns columns = new ContactColumns(contactIds.size());
+            for (int i = 0; i < contactIds.size(); i++) {
+                columns.add(contactIds.get(i), Long.parseLong(log.timestamps.get(i)), log.checksums.get(i).getBytes());
+            }
+            return columns;
+        }
+
+        private void remove(int from, int to) {
+            contactIds.subList(from, to).clear();
+            log.timestamps.subList(from, to).clear();
+            log.checksums.subList(from, to).clear();
+        }
+    }
+
+    private static class Keys implements IncrementalRiskEvaluator.KeySource {
+        final TreeMap<Long, String> keys = new TreeMap<>();
+        // the ranges read, as from-to
+        final ArrayList<String> reads = new ArrayList<>();
+
+        @Override
+        public long getCursor() {
+            return keys.isEmpty() ? 0 : keys.lastKey();
+        }
+
+        @Override
+        public String getKey(long sequence) {
+            return keys.get(sequence);
+        }
+
+        @Override
+        public void readKeys(long from, long to, IncrementalRiskEvaluator.SequencedKeyConsumer consumer) {
+            reads.add(from + "-" + to);
+            for (Map.Entry<Long, String> entry : keys.subMap(from, false, to, true).entrySet()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.ArrayList;
+
+/**
+ * The original way of matching: every key is tried with every logged contact,
+ * so it takes keys * contacts checksum calculations. Kept as the reference the
+ * {@link ContactIndex} is tested against.
+ */
+public class NaiveRiskMatcher implements RiskMatcher {
+
+    @Override
+    public ArrayList<ArrayList<String>> match(ArrayList<String> timestamps, ArrayList<String> checksums, ArrayList<String> infectedList) {
+        ArrayList<ArrayList<String>> matches = new ArrayList<>();
+        ChecksumHasher hasher = ChecksumHasher.get();
+        byte[][] logged = new byte[checksums.size()][];
+        for (int j = 0; j < logged.length; j++) {
+            logged[j] = checksums.get(j).getBytes();
+        }
+        // looping through all entries in the list of infected people, trying to reproduce all the checksums with the corresponding timestamps.
+        for (int i = 0; i < infectedList.size(); i++) {
+            ArrayList<String> stampsInOneKey = new ArrayList<>();
+            // check all database entries for every key from the main server
+            for (int j = 0; j < timestamps.size(); j++) {
+                if (isInfected(hasher, timestamps.get(j), infectedList.get(i), logged[j])) {
+                    stampsInOneKey.add(timestamps.get(j));
+                }
+            }
+            if (!stampsInOneKey.isEmpty()) {
+                matches.add(stampsInOneKey);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * check if the checksum given the timestamp and one of the keys from the
+     * server matches the checksum that corresponds to the timestamp.
+     *
+     * @param hasher calculates the checksum
+     * @param timeStamp timestamp from database.
+     * @param listItem key from the list of infected users
+     * @param checksum bytes of the checksum logged with the timestamp
+     * @return true if checksum could be reproduced.
+     */
+    private boolean isInfected(ChecksumHasher hasher, String timeStamp, String listItem, byte[] checksum) {
+        hasher.hash(timeStamp, listItem);
+        return hasher.matchesLogged(checksum);
+    }
+}
@@ -0,0 +1,20 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.util.ArrayList;
+
+/**
+ * Finds the contacts in the log whose checksum can be reproduced with one of
+ * the keys of infected users, the way the tests and benchmarks compare the
+ * original matching with the {@link ContactIndex}.
+ */
+public interface RiskMatcher {
+
+    /**
+     * @param timestamps timestamps of the logged contacts.
+     * @param checksums checksums logged with the timestamps, same order.
+     * @param infectedList keys of infected users, downloaded from the main server.
+     * @return for every key that matched at least one contact, the timestamps of
+     * the contacts it matched in the order of the log. Keys without a match are left out.
+     */
+    ArrayList<ArrayList<String>> match(ArrayList<String> timestamps, ArrayList<String> checksums, ArrayList<String> infectedList);
+}
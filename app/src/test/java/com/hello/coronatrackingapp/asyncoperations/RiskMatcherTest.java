@@ -0,0 +1,78 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the {@link ContactIndex} against {@link NaiveRiskMatcher}, the original way of matching.
+ */
+public class RiskMatcherTest {
+
+    @Test
+    public void contactIndex_sameAsNaive() {
+        for (long seed = 0; seed < 20; seed++) {
+            ContactLogFixture log = new ContactLogFixture(seed, 30, 300);
+            ArrayList<String> keys = log.keys(40, 10);
+            ArrayList<ArrayList<String>> expected = new NaiveRiskMatcher().match(log.timestamps, log.checksums, keys);
+            assertFalse(expected.isEmpty());
+            // built contact by contact, as from the database
+            ContactColumns columns = new ContactColumns(1);
+            for (int i = 0; i < log.timestamps.size(); i++) {
+                columns.add(i + 1, Long.parseLong(log.timestamps.get(i)), log.checksums.get(i).getBytes());
+            }
+            ContactIndex index = new ContactIndex(columns, 0);
+            assertEquals(log.timestamps.size(), index.size());
+            ArrayList<ArrayList<String>> matches = new ArrayList<>();
+            for (String key : keys) {
+                ArrayList<String> stampsInOneKey = ContactLogFixture.match(index, columns, key);
+                if (stampsInOneKey != null) {
+                    matches.add(stampsInOneKey);
+                }
+            }
+            assertEquals(expected, matches);
+        }
+    }
+
+    @Test
+    public void contactIndex_checksumOnlyCountsWithItsOwnTimestamp() {
+        ContactLogFixture log = new ContactLogFixture(2, 2, 0);
+        String id = log.ids.get(0);
+        String stamp = ContactLogFixture.matchableStamp(1000, id);
+        log.log(stamp, log.ids.get(1));
+        log.log(stamp, id);
+        // the checksum of the second contact logged again with a different timestamp
+        log.timestamps.add("1");
+        log.checksums.add(log.checksums.get(1));
+
+        int[] rows = new ContactIndex(log.columns(), 0).matchRows(id);
+        assertArrayEquals(new int[]{1}, rows);
+    }
+
+    @Test
+    public void contactIndex_findsContactsOfInfectedKey() {
+        ContactLogFixture log = new ContactLogFixture(1, 1, 0);
+        String first = ContactLogFixture.matchableStamp(1000, log.ids.get(0));
+        String second = ContactLogFixture.matchableStamp(3000, log.ids.get(0));
+        log.log(first, log.ids.get(0));
+        log.log("2000", "someone else");
+        log.log(second, log.ids.get(0));
+        ContactColumns columns = log.columns();
+        ContactIndex index = new ContactIndex(columns, 0);
+
+        assertNull(index.matchRows("not infected"));
+        ArrayList<String> stamps = ContactLogFixture.match(index, columns, log.ids.get(0));
+        assertEquals(2, stamps.size());
+        assertEquals(first, stamps.get(0));
+        assertEquals(second, stamps.get(1));
+    }
+
+    @Test
+    public void contactIndex_emptyLog() {
+        ContactIndex index = new ContactIndex(new ContactColumns(0), 0);
+        assertEquals(0, index.size());
+        assertNull(index.matchRows(new ContactLogFixture(3, 5, 0).ids.get(0)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.hello.coronatrackingapp.asyncoperations;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the main server in local unit tests, speaking protocol version 2:
+ * answers LIST frames with its keys and confirms every report.
+ */
+class StandInServer extends Thread {
+    private final ServerSocket serverSocket;
+    private final List<String> keys;
+
+    // closes the connection after every answer, like a server dropping idle connections
+    volatile boolean closeAfterAnswer;
+    // never answers requests, only the version line
+    volatile boolean silent;
+    // bytes per second the keys are sent with, like a slow mobile network, 0 for as fast as possible
+    volatile int bandwidth;
+
+    final AtomicInteger accepted = new AtomicInteger();
+    final AtomicInteger closedByClient = new AtomicInteger();
+
+    StandInServer(List<String> keys) throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        this.keys = keys;
+        setDaemon(true);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            accepted.incrementAndGet();
+            Thread connection = new Thread() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            };
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    closedByClient.incrementAndGet();
+                    return;
+                }
+                line.append((char) b);
+            }
+            if (!line.toString().equals(FrameCodec.VERSION_LINE)) {
+                throw new IOException("expected version line, got " + line);
+            }
+            out.write((FrameCodec.VERSION_LINE + "\n").getBytes());
+
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    closedByClient.incrementAndGet();
+                    return;
+                }
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                if (silent) {
+                    continue;
+                }
+                if (type == FrameCodec.LIST) {
+                    writeKeys(out);
+                } else {
+                    FrameCodec.writeAck(out, true);
+                }
+                out.flush();
+                if (closeAfterAnswer) {
+                    socket.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            closedByClient.incrementAndGet();
+        }
+    }
+
+    private void writeKeys(DataOutputStream out) throws IOException {
+        if (bandwidth <= 0) {
+            FrameCodec.writeKeys(out, false, keys.size(), keys, FrameCodec.RAW);
+            return;
+        }
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        FrameCodec.writeKeys(new DataOutputStream(frame), false, keys.size(), keys, FrameCodec.RAW);
+        byte[] bytes = frame.toByteArray();
+        // a tenth of a second at a time
+        int chunk = Math.max(1, bandwidth / 10);
+        for (int offset = 0; offset < bytes.length; offset += chunk) {
+            out.write(bytes, offset, Math.min(chunk, bytes.length - offset));
+            out.flush();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    void shutdown() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,194 @@
+package com.hello.coronatrackingapp.database;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link ContactWriter} writes the queued contacts in batches, in the
+ * order they were logged, and doesn't lose any when writing fails.
+ */
+public class ContactWriterTest {
+
+    @Test
+    public void add_writesFullBatchRightAway() throws Exception {
+        Batches store = new Batches();
+        ContactWriter writer = new ContactWriter(store, 4, TimeUnit.MINUTES.toMillis(1));
+        try {
+            for (int i = 0; i < 8; i++) {
+                writer.add(i, checksum("checksum" + i));
+            }
+            // long before the delay is over
+            store.await(8);
+            assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7"), store.timestamps());
+            assertEquals("checksum5", store.checksums().get(5));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void add_writesAfterDelay() throws Exception {
+        Batches store = new Batches();
+        ContactWriter writer = new ContactWriter(store, 100, 50);
+        try {
+            writer.add(1, checksum("a"));
+            writer.add(2, checksum("b"));
+            writer.add(3, checksum("c"));
+            store.await(3);
+            assertEquals(Collections.singletonList(3), store.sizes);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void flush_writesEverythingQueued() throws Exception {
+        Batches store = new Batches();
+        ContactWriter writer = new ContactWriter(store, 100, TimeUnit.MINUTES.toMillis(1));
+        try {
+            writer.add(1, checksum("a"));
+            writer.add(2, checksum("b"));
+            assertTrue(writer.flush());
+            assertEquals(Arrays.asList("1", "2"), store.timestamps());
+            // nothing left to write
+            assertTrue(writer.flush());
+            assertEquals(2, store.timestamps().size());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void flush_keepsFailedBatchAndWritesItFirst() throws Exception {
+        Batches store = new Batches();
+        ContactWriter writer = new ContactWriter(store, 100, TimeUnit.MINUTES.toMillis(1));
+        try {
+            store.failures = 1;
+            writer.add(1, checksum("a"));
+            assertFalse(writer.flush());
+            writer.add(2, checksum("b"));
+            assertTrue(writer.flush());
+            assertEquals(Arrays.asList("1", "2"), store.timestamps());
+            assertEquals(Arrays.asList("a", "b"), store.checksums());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void add_retriesFailedBatchWithoutNewContacts() throws Exception {
+        Batches store = new Batches();
+        ContactWriter writer = new ContactWriter(store, 100, 50);
+        try {
+            store.failures = 2;
+            writer.add(1, checksum("a"));
+            // nothing else is logged, the writer has to try again on its own
+            store.await(1);
+            assertEquals(Collections.singletonList("1"), store.timestamps());
+            assertEquals(0, store.failures);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void close_writesWhatIsLeft() {
+        Batches store = new Batches();
+        ContactWriter writer = new ContactWriter(store, 100, TimeUnit.MINUTES.toMillis(1));
+        writer.add(1, checksum("a"));
+        writer.close();
+        assertEquals(Collections.singletonList("1"), store.timestamps());
+        try {
+            writer.add(2, checksum("b"));
+            fail("closed");
+        } catch (IllegalStateException expected) {
+            // nothing is written after closing
+        }
+    }
+
+    @Test
+    public void add_keepsOrderOfEveryThread() throws Exception {
+        Batches store = new Batches();
+        final ContactWriter writer = new ContactWriter(store, 16, 5);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final String device = Integer.toString(t);
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        writer.add(i, checksum(device));
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        List<String> timestamps = store.timestamps();
+        List<String> checksums = store.checksums();
+        assertEquals(2000, timestamps.size());
+        int[] next = new int[threads.length];
+        for (int i = 0; i < timestamps.size(); i++) {
+            int device = Integer.parseInt(checksums.get(i));
+            assertEquals(Integer.toString(next[device]++), timestamps.get(i));
+        }
+    }
+
+    private static byte[] checksum(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Keeps the batches it is given, failing as often as it is told to.
+     */
+    private static class Batches implements ContactWriter.Store {
+        private final ArrayList<String> timestamps = new ArrayList<>();
+        // decoded again, for comparing them
+        private final ArrayList<String> checksums = new ArrayList<>();
+        final List<Integer> sizes = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile int failures;
+
+        @Override
+        public synchronized void write(ContactWriter.Batch batch) throws Exception {
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("database locked");
+            }
+            sizes.add(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                timestamps.add(Long.toString(batch.getTimestamp(i)));
+                checksums.add(new String(batch.getChecksum(i), StandardCharsets.UTF_8));
+            }
+            notifyAll();
+        }
+
+        synchronized void await(int contacts) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (timestamps.size() < contacts) {
+                long left = deadline - System.nanoTime();
+                assertTrue("written " + timestamps.size() + " of " + contacts, left > 0);
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+        }
+
+        synchronized List<String> timestamps() {
+            return new ArrayList<>(timestamps);
+        }
+
+        synchronized List<String> checksums() {
+            return new ArrayList<>(checksums);
+        }
+    }
+}